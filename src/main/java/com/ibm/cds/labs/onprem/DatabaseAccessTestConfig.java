@@ -1,15 +1,30 @@
 package com.ibm.cds.labs.onprem;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.ibm.cds.labs.onprem.util.JSONUtil;
+import com.ibm.json.java.JSONArray;
+import com.ibm.json.java.JSONObject;
+
 public class DatabaseAccessTestConfig {
 
 	private String urlscheme = null;
 	private String drivername = null;
 	private String testquery = null; 
+	// optional connector settings, such as "discovery"
+	private JSONObject options = null;
 	
 	protected DatabaseAccessTestConfig(String scheme, String driver, String query) {
+		this(scheme, driver, query, null);
+	}
+
+	protected DatabaseAccessTestConfig(String scheme, String driver, String query, JSONObject connector) {
 		urlscheme = scheme;
 		drivername = driver;
 		testquery = query;
+		options = (connector == null) ? new JSONObject() : connector;
 	}
 	
 	protected String getURLDisplayName() {
@@ -24,5 +39,114 @@ public class DatabaseAccessTestConfig {
 		return testquery;
 	}
 
+	/**
+	 * Returns an optional settings section of the connector definition.
+	 * @param section - the section name (lower case)
+	 * @return the settings; guaranteed to be not null
+	 */
+	protected JSONObject getOptions(String section) {
+		Object value = options.get(section);
+		if(value instanceof JSONObject) {
+			return (JSONObject) value;
+		}
+		return new JSONObject();
+	}
+
+	/**
+	 * @return the schemas that are not crawled during metadata discovery, such as system schemas; guaranteed to be not null
+	 */
+	protected List<String> getDiscoveryExcludedSchemas() {
+		List<String> excluded = new ArrayList<String>();
+		Object value = getOptions("discovery").get("exclude_schemas");
+		if(value instanceof JSONArray) {
+			for(Object schema : (JSONArray) value) {
+				excluded.add(String.valueOf(schema));
+			}
+		}
+		return excluded;
+	}
+
+	/**
+	 * @return the JDBC fetch size to be used for cursor-based sampling; 0 if the driver default should be used. MySQL Connector/J
+	 * only streams rows if the fetch size is Integer.MIN_VALUE.
+	 */
+	protected int getSampleFetchSize() {
+		return (int) JSONUtil.getLong(getOptions("sample"), "fetch_size", 0);
+	}
+
+	/**
+	 * @return the auto-commit mode to be used for cursor-based sampling. PgJDBC ignores the fetch size in auto-commit mode.
+	 */
+	protected boolean getSampleAutoCommit() {
+		Object value = getOptions("sample").get("autocommit");
+		if(value == null) {
+			return true;
+		}
+		return Boolean.parseBoolean(String.valueOf(value));
+	}
+
+	/**
+	 * @return the query that is used to measure bulk-fetch throughput, or null if throughput is not measured
+	 */
+	protected String getTuningBulkQuery() {
+		return (String) getOptions("tuning").get("bulk_query");
+	}
+
+	/**
+	 * @return the connection property variants to be benchmarked: [{"name":"STRING_VALUE","properties":["NAME=VALUE",...]},...]; guaranteed to be not null
+	 */
+	protected JSONArray getTuningVariants() {
+		Object value = getOptions("tuning").get("variants");
+		if(value instanceof JSONArray) {
+			return (JSONArray) value;
+		}
+		return new JSONArray();
+	}
+
+	/**
+	 * Returns the driver-specific connection properties that limit the time spent establishing a connection and waiting for
+	 * the server, such as loginTimeout. The connector's timeout_properties list the properties; the {seconds} and {millis}
+	 * placeholders are replaced with the timeout.
+	 * @param timeoutSeconds - the timeout
+	 * @return the properties; guaranteed to be not null
+	 */
+	protected Properties getTimeoutProperties(long timeoutSeconds) {
+		Properties properties = toProperties(getOptions("probes").get("timeout_properties"));
+		for(String name : properties.stringPropertyNames()) {
+			properties.setProperty(name, properties.getProperty(name).replace("{seconds}", Long.toString(timeoutSeconds)).replace("{millis}", Long.toString(1000 * timeoutSeconds)));
+		}
+		return properties;
+	}
+
+	/**
+	 * @return the write benchmark settings {"create":"DDL","insert":"SQL","clear":"SQL","drop":"DDL","batch_properties":["NAME=VALUE",...]};
+	 *         statements contain a {table} placeholder. The insert statement must have exactly two parameters, which are bound
+	 *         as an INTEGER (the row number) and a VARCHAR of 64 characters, such as INSERT INTO {table} (id, payload) VALUES (?, ?).
+	 *         Guaranteed to be not null.
+	 */
+	protected JSONObject getWriteBenchmarkOptions() {
+		return getOptions("write_benchmark");
+	}
+
+	/**
+	 * Converts a list of connection properties to a Properties object. Properties are specified as "NAME=VALUE" strings
+	 * because driver property names are case-sensitive and property keys in the configuration file are normalized to lower case.
+	 * @param list - ["NAME=VALUE",...]; may be null
+	 * @return the properties; guaranteed to be not null
+	 */
+	protected static Properties toProperties(Object list) {
+		Properties properties = new Properties();
+		if(list instanceof JSONArray) {
+			String property = null;
+			for(Object item : (JSONArray) list) {
+				property = String.valueOf(item);
+				int separator = property.indexOf('=');
+				if(separator > 0) {
+					properties.setProperty(property.substring(0, separator).trim(), property.substring(separator + 1).trim());
+				}
+			}
+		}
+		return properties;
+	}
 	
 } // DatabaseAccessTestConfig
@@ -0,0 +1,132 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.net.URI;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.ibm.cds.labs.onprem.util.AsyncHttpClient;
+import com.ibm.cds.labs.onprem.util.JSONUtil;
+import com.ibm.json.java.JSONObject;
+
+/**
+ * Tests on-premises HTTP/REST endpoints, such as http://gateway-host:port/health, using a non-blocking HTTP client.
+ * The endpoint is considered accessible if it responds with a status code below 400. If the user-provided service defines
+ * the user and password properties, basic authentication is used.
+ * @author ptitzler
+ *
+ */
+public class HttpOnPremDataSourceProbe implements OnPremDataSourceProbe {
+
+	public boolean supports(String scheme) {
+		return "http".equals(scheme);
+	} // supports
+
+	public Collection<String> getSupportedTypes() {
+		return Collections.singletonList("HTTP");
+	} // getSupportedTypes
+
+	/**
+	 * Requests bulkhead permits for the endpoint without blocking and runs the test once they are granted.
+	 */
+	public CompletionStage<OnPremDataSourceProbeResult> probe(final String scheme, final String url, final JSONObject credentials) {
+
+		final long start = System.currentTimeMillis();
+
+		return OnPremDataSourceBulkheads.acquire(scheme, OnPremServiceBindings.getTarget(url)).thenCompose(new Function<OnPremDataSourceBulkheads.Permit,CompletionStage<OnPremDataSourceProbeResult>>() {
+			public CompletionStage<OnPremDataSourceProbeResult> apply(final OnPremDataSourceBulkheads.Permit permit) {
+				return request(url, credentials, start).whenComplete(new BiConsumer<OnPremDataSourceProbeResult,Throwable>() {
+					public void accept(OnPremDataSourceProbeResult r, Throwable t) {
+						permit.release();
+					}
+				});
+			}
+		}).exceptionally(new Function<Throwable,OnPremDataSourceProbeResult>() {
+			public OnPremDataSourceProbeResult apply(Throwable t) {
+				if((t instanceof CompletionException) && (t.getCause() != null)) {
+					t = t.getCause();
+				}
+				// typically OnPremDataSourceThrottledException
+				return OnPremDataSourceProbeResult.failed(t, System.currentTimeMillis() - start);
+			}
+		});
+
+	} // probe
+
+	/*
+	 * Sends the request and evaluates the response.
+	 */
+	private CompletableFuture<OnPremDataSourceProbeResult> request(final String url, JSONObject credentials, final long start) {
+
+		long timeoutMillis = 0;
+
+		try {
+			timeoutMillis = 1000 * JSONUtil.getLong(OnPremDataSourceAccessTestConfiguration.getSettings("probes"), "timeout_seconds", 60);
+		}
+		catch(OnPremDataSourceAccessTestConfigurationException opdsatce) {
+			CompletableFuture<OnPremDataSourceProbeResult> result = new CompletableFuture<OnPremDataSourceProbeResult>();
+			result.complete(OnPremDataSourceProbeResult.failed(opdsatce, 0));
+			return result;
+		}
+
+		Map<String,String> headers = new HashMap<String,String>();
+		if(credentials.get("user") != null) {
+			String userinfo = credentials.get("user") + ":" + (credentials.get("password") == null ? "" : credentials.get("password"));
+			try {
+				headers.put("Authorization", "Basic " + Base64.getEncoder().encodeToString(userinfo.getBytes("UTF-8")));
+			}
+			catch(java.io.UnsupportedEncodingException ueex) {
+				// UTF-8 is always supported
+			}
+		}
+
+		CompletableFuture<AsyncHttpClient.Response> response = null;
+		try {
+			response = AsyncHttpClient.get(URI.create(url), headers, timeoutMillis, 64 * 1024);
+		}
+		catch(IllegalArgumentException iaex) {
+			CompletableFuture<OnPremDataSourceProbeResult> result = new CompletableFuture<OnPremDataSourceProbeResult>();
+			result.complete(new OnPremDataSourceProbeResult(OnPremDataSourceProbeResult.STATUS_SKIPPED, "Test was skipped. The URL " + url + " is invalid.", 0));
+			return result;
+		}
+
+		return response.handle(new BiFunction<AsyncHttpClient.Response,Throwable,OnPremDataSourceProbeResult>() {
+			public OnPremDataSourceProbeResult apply(AsyncHttpClient.Response r, Throwable t) {
+				long elapsed = System.currentTimeMillis() - start;
+				if(t != null) {
+					if((t instanceof CompletionException) && (t.getCause() != null)) {
+						t = t.getCause();
+					}
+					System.err.println(t.getMessage());
+					return new OnPremDataSourceProbeResult(false, "Test failed: Failed to connect to on-premises HTTP endpoint " + url + " (root cause: " + t + ")", elapsed);
+				}
+				if(r.getStatus() < 400) {
+					return new OnPremDataSourceProbeResult(true, "The on-premises HTTP endpoint responded with status code " + r.getStatus() + ".", elapsed);
+				}
+				return new OnPremDataSourceProbeResult(false, "Test failed: The on-premises HTTP endpoint responded with status code " + r.getStatus() + ".", elapsed);
+			}
+		});
+
+	} // request
+
+} // class
@@ -12,6 +12,8 @@
 -------------------------------------------------------------------------------*/
 package com.ibm.cds.labs.onprem;
 
+import java.util.Collection;
+
 /**
  * An abstract wrapper for an on-prem data source test provider.
  * @author ptitzler
@@ -38,5 +40,16 @@ public abstract class OnPremDataSource {
 	 */
 	protected abstract String runQuery() 
 		throws OnPremDataSourceAccessTestException;
+
+	/**
+	 * Discover the schemas, tables and columns that are visible through the data source. Catalog information is cached;
+	 * only schemas that have not been loaded yet or whose cached information has expired are crawled.
+	 * @param schemas - the schemas to be loaded; null selects all schemas
+	 * @param refresh - if true, cached information is discarded
+	 * @return the catalog
+	 * @throws OnPremDataSourceAccessTestException if a problem was encountered
+	 */
+	protected abstract OnPremDataSourceCatalog discover(Collection<String> schemas, boolean refresh)
+		throws OnPremDataSourceAccessTestException;
 	
 } // class
@@ -0,0 +1,182 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+
+import com.ibm.cds.labs.onprem.util.JSONUtil;
+import com.ibm.json.java.JSONArray;
+import com.ibm.json.java.JSONObject;
+
+
+@Path("/advisor")
+public class OnPremDataSourceAccessAdvisor {
+
+	/**
+	 * This method benchmarks the connection property variants that are defined for the connector in rdbms_config.json
+	 * (tuning.variants) against the on-premises data source of a bound user-provided service and recommends the fastest
+	 * property set for the link. Variants are measured one after the other to avoid interference. A discarded warm-up pass
+	 * with the driver defaults runs first, so that driver initialization and cold server caches do not penalize the first
+	 * variant. Each variant is scored by the estimated duration of a reference workload:
+	 * score_ms = connect_ms + iterations * latency_ms + bulk_ms, where bulk_ms is the median of bulk_runs bulk query executions.
+	 * All connections are opened with the connector's timeout properties (probes.timeout_properties); a variant's properties
+	 * take precedence. No further variants are started after tuning.max_seconds.
+	 * @param svcName - the user-provided service name (required)
+	 * @return A JSON string {"svc_name":"STRING_VALUE","on_prem_resource_type":"STRING_VALUE",
+	 *                        "variants":[{"name":"STRING_VALUE","properties":["NAME=VALUE",...],"rank":NUMBER,"score_ms":NUMBER,"connect_ms":NUMBER,"latency_ms":NUMBER,...,"error":"STRING_VALUE"},...],
+	 *                        "recommendation":{"name":"STRING_VALUE","properties":["NAME=VALUE",...]},"limit":"time|none","elapsed_ms":NUMBER,"error":"STRING_VALUE"}
+	 *         Variants are sorted by rank; variants that failed have an error property and no rank. Variants that were not
+	 *         measured because the time limit was reached are listed last and have the property "skipped":"true".
+	 */
+	@GET
+	public String advise(@QueryParam("service") String svcName) {
+
+		JSONObject result = new JSONObject();
+		String message = null;
+		long start = System.currentTimeMillis();
+
+		result.put("svc_name", svcName);
+
+		try {
+			if((svcName == null) || (svcName.trim().length() == 0)) {
+				throw new OnPremDataSourceAccessTestException("The service query parameter is required.");
+			}
+
+			RelationalOnPremDataSource resource = OnPremServiceBindings.getRelationalDataSource(svcName);
+			DatabaseAccessTestConfig config = resource.getAccessTestConfig();
+			result.put("on_prem_resource_type", config.getURLDisplayName());
+
+			JSONObject settings = OnPremDataSourceAccessTestConfiguration.getSettings("tuning");
+			int connects = JSONUtil.getInt(settings, "connects", 3);
+			int iterations = JSONUtil.getInt(settings, "iterations", 10);
+			int bulkRuns = JSONUtil.getInt(settings, "bulk_runs", 3);
+			long maxSeconds = JSONUtil.getLong(settings, "max_seconds", 120);
+			long deadline = start + 1000 * maxSeconds;
+			Properties timeouts = resource.getTimeoutProperties();
+
+			// warm-up pass; the measurements are discarded
+			try {
+				resource.benchmark(timeouts, 1, iterations, 1, new JSONObject());
+			}
+			catch(OnPremDataSourceAccessTestException opex) {
+				// the variants report their own errors
+			}
+
+			List<JSONObject> measured = new ArrayList<JSONObject>();
+			List<JSONObject> failed = new ArrayList<JSONObject>();
+			List<JSONObject> skipped = new ArrayList<JSONObject>();
+			JSONObject variant = null;
+			JSONObject outcome = null;
+
+			for(Object variantobj : config.getTuningVariants()) {
+				variant = (JSONObject) variantobj;
+				outcome = new JSONObject();
+				outcome.put("name", variant.get("name"));
+				JSONArray properties = new JSONArray();
+				if(variant.get("properties") instanceof JSONArray) {
+					properties.addAll((JSONArray) variant.get("properties"));
+				}
+				outcome.put("properties", properties);
+				if(System.currentTimeMillis() >= deadline) {
+					outcome.put("skipped", "true");
+					skipped.add(outcome);
+					continue;
+				}
+				try {
+					// variant properties override the timeout properties
+					Properties connectionProperties = new Properties();
+					connectionProperties.putAll(timeouts);
+					connectionProperties.putAll(DatabaseAccessTestConfig.toProperties(properties));
+					resource.benchmark(connectionProperties, connects, iterations, bulkRuns, outcome);
+					double score = ((Number) outcome.get("connect_ms")).doubleValue() + iterations * ((Number) outcome.get("latency_ms")).doubleValue();
+					if(outcome.get("bulk_ms") != null) {
+						score = score + ((Number) outcome.get("bulk_ms")).doubleValue();
+					}
+					outcome.put("score_ms", Math.round(score * 10) / 10.0);
+					measured.add(outcome);
+				}
+				catch(OnPremDataSourceAccessTestException opex) {
+					// the driver may reject the variant; report it and continue
+					message = opex.getMessage();
+					if(opex.getCause() != null) {
+						message = message + " (root cause: " + opex.getCause().getMessage() + ")" ;
+					}
+					outcome.put("error", message);
+					failed.add(outcome);
+				}
+			}
+
+			// rank by score, lowest first
+			Collections.sort(measured, new Comparator<JSONObject>() {
+				public int compare(JSONObject o1, JSONObject o2) {
+					return Double.compare(((Number) o1.get("score_ms")).doubleValue(), ((Number) o2.get("score_ms")).doubleValue());
+				}
+			});
+
+			JSONArray variants = new JSONArray();
+			for(int i = 0; i < measured.size(); i++) {
+				measured.get(i).put("rank", i + 1);
+				variants.add(measured.get(i));
+			}
+			variants.addAll(failed);
+			variants.addAll(skipped);
+			result.put("variants", variants);
+			result.put("limit", skipped.isEmpty() ? "none" : "time");
+
+			if(! measured.isEmpty()) {
+				JSONObject recommendation = new JSONObject();
+				recommendation.put("name", measured.get(0).get("name"));
+				recommendation.put("properties", measured.get(0).get("properties"));
+				result.put("recommendation", recommendation);
+			}
+			else if(failed.isEmpty() && skipped.isEmpty()) {
+				result.put("error", "No connection property variants are defined for " + config.getURLDisplayName() + " data sources in the configuration file.");
+			}
+			else if(failed.isEmpty()) {
+				result.put("error", "None of the connection property variants could be benchmarked within the time limit of " + maxSeconds + " seconds.");
+			}
+			else {
+				result.put("error", "None of the connection property variants could be benchmarked.");
+			}
+		}
+		catch(OnPremDataSourceNotSupportedException opdsnsex) {
+			result.put("error", "The user-provided service references a JDBC data source of type "+ opdsnsex.getMessage() + ", which is currently not supported by this utility.");
+		}
+		catch(OnPremDataSourceAccessTestException opex) {
+			result.put("error", opex.getMessage());
+		}
+		catch(OnPremDataSourceAccessTestConfigurationException opdsatce) {
+			result.put("error", opdsatce.getMessage());
+		}
+		catch(Exception ex) {
+			// an unexpected error occurred; dump information to console
+			System.err.println(ex.getMessage());
+			ex.printStackTrace(System.err);
+			result.put("error", "The following error occurred: " + ex.getMessage());
+		}
+
+		result.put("elapsed_ms", System.currentTimeMillis() - start);
+
+		return result.toString();
+
+	} // advise
+
+} // class
@@ -0,0 +1,140 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+
+import com.ibm.json.java.JSONArray;
+import com.ibm.json.java.JSONObject;
+
+
+@Path("/catalog")
+public class OnPremDataSourceAccessCatalog {
+
+	/**
+	 * This method answers catalog queries for the on-premises data source of a bound user-provided service, such as
+	 * "does table X with columns Y exist". Queries are answered from the cached catalog; the data source is only accessed
+	 * if the relevant catalog information has not been loaded yet or has expired.
+	 * @param svcName - the user-provided service name (required)
+	 * @param schema - the schema name; if not specified, the list of schemas is returned
+	 * @param table - the table name; if not specified, the tables and columns of the schema are returned
+	 * @param columns - comma separated list of expected column names (optional)
+	 * @param refresh - if true, cached catalog information is discarded
+	 * @return A JSON string {"svc_name":"STRING_VALUE","schema":"STRING_VALUE","table":"STRING_VALUE","exists":"BOOLEAN_VALUE",
+	 *                        "columns":["STRING_VALUE",...],"missing_columns":["STRING_VALUE",...],"elapsed_ms":NUMBER,"error":"STRING_VALUE"}
+	 *         If no table is specified, the schemas property is returned instead. The error property is only set if a problem was encountered.
+	 */
+	@GET
+	public String query(@QueryParam("service") String svcName,
+			            @QueryParam("schema") String schema,
+			            @QueryParam("table") String table,
+			            @QueryParam("columns") String columns,
+			            @QueryParam("refresh") @DefaultValue("false") String refresh) {
+
+		JSONObject result = new JSONObject();
+		String message = null;
+		long start = System.currentTimeMillis();
+
+		result.put("svc_name", svcName);
+
+		try {
+			if((svcName == null) || (svcName.trim().length() == 0)) {
+				throw new OnPremDataSourceAccessTestException("The service query parameter is required.");
+			}
+
+			RelationalOnPremDataSource resource = OnPremServiceBindings.getRelationalDataSource(svcName);
+
+			OnPremDataSourceCatalog catalog = null;
+			if(schema == null) {
+				// load everything
+				catalog = resource.discover(null, Boolean.parseBoolean(refresh));
+			}
+			else {
+				// only load the schema of interest
+				catalog = resource.discover(Collections.singletonList(schema), Boolean.parseBoolean(refresh));
+			}
+
+			if(schema == null) {
+				catalog.addTo(result, null);
+			}
+			else if(table == null) {
+				result.put("schema", schema);
+				result.put("exists", Boolean.toString(catalog.hasSchema(schema)));
+				catalog.addTo(result, schema);
+			}
+			else {
+				result.put("schema", schema);
+				result.put("table", table);
+				List<String> defined = catalog.getColumns(schema, table);
+				result.put("exists", Boolean.toString(defined != null));
+				if(defined != null) {
+					JSONArray columnlist = new JSONArray();
+					columnlist.addAll(defined);
+					result.put("columns", columnlist);
+					if(columns != null) {
+						JSONArray missing = new JSONArray();
+						missing.addAll(catalog.getMissingColumns(schema, table, splitList(columns)));
+						result.put("missing_columns", missing);
+						if(! missing.isEmpty()) {
+							// the table exists but does not match the expected definition
+							result.put("exists", "false");
+						}
+					}
+				}
+			}
+		}
+		catch(OnPremDataSourceNotSupportedException opdsnsex) {
+			result.put("error", "The user-provided service references a JDBC data source of type "+ opdsnsex.getMessage() + ", which is currently not supported by this utility.");
+		}
+		catch(OnPremDataSourceAccessTestException opex) {
+			System.err.println(opex.getMessage());
+			message = opex.getMessage();
+			if(opex.getCause() != null) {
+				message = message + " (root cause: " + opex.getCause().getMessage() + ")" ;
+			}
+			result.put("error", message);
+		}
+		catch(OnPremDataSourceAccessTestConfigurationException opdsatce) {
+			result.put("error", opdsatce.getMessage());
+		}
+		catch(Exception ex) {
+			// an unexpected error occurred; dump information to console
+			System.err.println(ex.getMessage());
+			ex.printStackTrace(System.err);
+			result.put("error", "The following error occurred: " + ex.getMessage());
+		}
+
+		result.put("elapsed_ms", System.currentTimeMillis() - start);
+
+		return result.toString();
+
+	} // query
+
+	private static List<String> splitList(String list) {
+		List<String> items = new ArrayList<String>();
+		for(String item : list.split(",")) {
+			if(item.trim().length() > 0) {
+				items.add(item.trim());
+			}
+		}
+		return items;
+	} // splitList
+
+} // class
@@ -0,0 +1,441 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+
+import com.ibm.cds.labs.onprem.util.AsyncHttpClient;
+import com.ibm.cds.labs.onprem.util.JSONUtil;
+import com.ibm.json.java.JSON;
+import com.ibm.json.java.JSONArray;
+import com.ibm.json.java.JSONObject;
+import com.ibm.json.java.OrderedJSONObject;
+
+
+@Path("/cluster")
+public class OnPremDataSourceAccessCluster {
+
+	/**
+	 * This method runs the connectivity test on this instance and, in parallel, on all peer instances of the application,
+	 * and merges the results per service and per instance. Peers are listed in the cluster.peers section of rdbms_config.json
+	 * or in the ONPREM_TEST_PEERS environment variable (comma separated), which takes precedence. Each entry is the URL of a
+	 * peer's test endpoint, such as http://10.0.0.2:61001/api/test. Cloud Foundry application instances that share a route
+	 * are addressed individually by appending #APP_GUID:INSTANCE_INDEX to the URL, such as
+	 * http://myapp.mybluemix.net/api/test#9f0b8ea6-1f2c-4fe8-9f4c-8b5e0f0a1c2d:1, which is sent as the X-CF-APP-INSTANCE
+	 * request header. Instances are identified by the name that they report; a peer that reports the same name as another
+	 * instance, for example because the router forwarded the request to an instance that was already tested, is reported
+	 * as a duplicate and its results are ignored. All instances, including this one, wait at most the probe
+	 * timeout for their tests (probes.timeout_seconds, or the timeout if it is shorter) and report tests that did not complete as
+	 * failed. The timeout is passed to the peers, so that a single hung test does not suppress the other results of a peer.
+	 * Peers that do not respond within the probe timeout plus cluster.timeout_margin_ms are reported as unreachable and the
+	 * result is marked as partial.
+	 * An instance is flagged as an outlier for a service if its test result differs from the majority of instances (success)
+	 * or if the test took at least cluster.latency_factor times as long as the median of the other instances, and at least
+	 * cluster.latency_min_delta_ms longer (latency). An instance is also flagged if its success rate across all services is
+	 * at least cluster.success_rate_delta below the median success rate of all instances (success_rate).
+	 * @return A JSON string {"instances":[{"instance":"STRING_VALUE","url":"STRING_VALUE","status":"ok|unreachable|error|duplicate","success_rate":NUMBER,"elapsed_ms":NUMBER,"error":"STRING_VALUE"},...],
+	 *                        "services":[{"svc_name":"STRING_VALUE","on_prem_resource_type":"STRING_VALUE","passed":NUMBER,"failed":NUMBER,"consistent":"BOOLEAN_VALUE","median_elapsed_ms":NUMBER,
+	 *                                     "instances":[{"instance":"STRING_VALUE","success":"BOOLEAN_VALUE","status":"passed|failed|skipped|throttled","output":"STRING_VALUE","elapsed_ms":NUMBER},...]},...],
+	 *                        "outliers":[{"instance":"STRING_VALUE","svc_name":"STRING_VALUE","reason":"success|latency|success_rate","detail":"STRING_VALUE"},...],
+	 *                        "partial":"BOOLEAN_VALUE","elapsed_ms":NUMBER,"error":"STRING_VALUE"}
+	 *         The first instance is the one that served the request; it does not have a url. The elapsed_ms property of an instance is not set if the peer did not respond.
+	 * @param timeout - the maximum number of seconds to wait for the tests on each instance (optional; capped at probes.timeout_seconds)
+	 */
+	@GET
+	public String runClusterTests(@QueryParam("timeout") String timeout) {
+
+		JSONObject result = new OrderedJSONObject();
+		long start = System.currentTimeMillis();
+
+		try {
+			JSONObject settings = OnPremDataSourceAccessTestConfiguration.getSettings("cluster");
+			// the peers and this instance use the same probe timeout
+			long timeoutSeconds = JSONUtil.getLong(OnPremDataSourceAccessTestConfiguration.getSettings("probes"), "timeout_seconds", 60);
+			if(timeout != null) {
+				try {
+					timeoutSeconds = Math.max(1, Math.min(timeoutSeconds, Long.parseLong(timeout.trim())));
+				}
+				catch(NumberFormatException nfex) {
+					// use the configured timeout
+				}
+			}
+			// allow for the transfer of the peer responses
+			long timeoutMillis = 1000 * timeoutSeconds + JSONUtil.getLong(settings, "timeout_margin_ms", 5000);
+			int maxResponseBytes = JSONUtil.getInt(settings, "max_response_bytes", 1048576);
+			long deadline = start + timeoutMillis;
+
+			// send the requests to all peers; the responses are received asynchronously
+			List<String> peers = getPeers(settings);
+			List<CompletableFuture<AsyncHttpClient.Response>> pending = new ArrayList<CompletableFuture<AsyncHttpClient.Response>>();
+			// the time at which each peer response was received
+			final long[] received = new long[peers.size()];
+			for(String peer : peers) {
+				final int index = pending.size();
+				try {
+					String url = getPeerURL(peer);
+					url = url + ((url.indexOf('?') < 0) ? "?" : "&") + "timeout=" + timeoutSeconds;
+					pending.add(AsyncHttpClient.get(URI.create(url), getPeerHeaders(peer), timeoutMillis, maxResponseBytes).thenApply(new Function<AsyncHttpClient.Response,AsyncHttpClient.Response>() {
+						public AsyncHttpClient.Response apply(AsyncHttpClient.Response response) {
+							received[index] = System.currentTimeMillis();
+							return response;
+						}
+					}));
+				}
+				catch(IllegalArgumentException iaex) {
+					CompletableFuture<AsyncHttpClient.Response> invalid = new CompletableFuture<AsyncHttpClient.Response>();
+					invalid.completeExceptionally(new OnPremDataSourceAccessTestException("The peer URL " + peer + " is invalid."));
+					pending.add(invalid);
+				}
+			}
+
+			// meanwhile, run the tests on this instance
+			JSONArray instances = new JSONArray();
+			List<JSONObject> reports = new ArrayList<JSONObject>();
+			JSONObject instance = new OrderedJSONObject();
+			instance.put("instance", OnPremDataSourceAccessTest.getInstanceName());
+			long localStart = System.currentTimeMillis();
+			JSONObject report = (JSONObject) JSON.parse(new OnPremDataSourceAccessTest().runTests(Long.toString(timeoutSeconds)));
+			instance.put("elapsed_ms", System.currentTimeMillis() - localStart);
+			addStatus(instance, report);
+			instances.add(instance);
+			reports.add(report);
+
+			// names of the instances that reported results
+			Set<String> responders = new HashSet<String>();
+			responders.add(String.valueOf(instance.get("instance")));
+
+			// collect the peer results, as far as they are available before the deadline
+			boolean partial = false;
+			for(int i = 0; i < peers.size(); i++) {
+				instance = new OrderedJSONObject();
+				// replaced by the name that the peer reports, if any
+				instance.put("instance", OnPremServiceBindings.getTarget(getPeerURL(peers.get(i))));
+				instance.put("url", peers.get(i));
+				report = null;
+				try {
+					AsyncHttpClient.Response response = pending.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+					if(response.getStatus() != 200) {
+						throw new OnPremDataSourceAccessTestException("The peer returned HTTP status " + response.getStatus() + ".");
+					}
+					instance.put("elapsed_ms", received[i] - start);
+					report = (JSONObject) JSON.parse(response.getBody());
+					addStatus(instance, report);
+					if(report.get("instance") != null) {
+						instance.put("instance", report.get("instance"));
+						if(! responders.add(String.valueOf(report.get("instance")))) {
+							// the request was routed to an instance that was already tested
+							instance.put("status", "duplicate");
+							instance.put("error", "The response was sent by instance " + report.get("instance") + ", which already reported its results. Make sure that each peer URL addresses a different instance.");
+							instance.remove("elapsed_ms");
+							report = null;
+						}
+					}
+				}
+				catch(TimeoutException toex) {
+					pending.get(i).cancel(true);
+					instance.put("status", "unreachable");
+					instance.put("error", "The peer did not respond within " + timeoutMillis + " ms.");
+				}
+				catch(ExecutionException eex) {
+					instance.put("status", "unreachable");
+					if(eex.getCause() instanceof SocketTimeoutException) {
+						instance.put("error", "The peer did not respond within " + timeoutMillis + " ms.");
+					}
+					else {
+						instance.put("error", "The peer could not be reached (root cause: " + eex.getCause().getMessage() + ")");
+					}
+				}
+				catch(OnPremDataSourceAccessTestException opex) {
+					instance.put("status", "error");
+					instance.put("error", opex.getMessage());
+				}
+				catch(Exception ex) {
+					// the response is not a test result
+					instance.put("status", "error");
+					instance.put("error", "The peer response could not be processed (root cause: " + ex.getMessage() + ")");
+				}
+				if(! "ok".equals(instance.get("status"))) {
+					partial = true;
+				}
+				instances.add(instance);
+				reports.add(report);
+			}
+
+			JSONArray outliers = new JSONArray();
+			result.put("instances", instances);
+			result.put("services", merge(instances, reports, settings, outliers));
+			findSuccessRateOutliers(instances, reports, settings, outliers);
+			result.put("outliers", outliers);
+			result.put("partial", Boolean.toString(partial));
+		}
+		catch(OnPremDataSourceAccessTestConfigurationException opdsatce) {
+			// fatal error thrown by OnPremDataSourceAccessTestConfiguration; a problem was encountered while trying to load/process the configuration file
+			result.put("error", opdsatce.getMessage());
+		}
+		catch(Exception ex) {
+			// an unexpected error occurred; dump information to console
+			System.err.println(ex.getMessage());
+			ex.printStackTrace(System.err);
+			result.put("error", "The following error occurred: " + ex.getMessage());
+		}
+
+		result.put("elapsed_ms", System.currentTimeMillis() - start);
+
+		return result.toString();
+
+	} // runClusterTests
+
+	/*
+	 * Returns the URLs of the peer test endpoints. The ONPREM_TEST_PEERS environment variable takes precedence over the configuration file.
+	 */
+	private static List<String> getPeers(JSONObject settings) {
+
+		List<String> peers = new ArrayList<String>();
+		String env = System.getenv("ONPREM_TEST_PEERS");
+		if(env != null) {
+			for(String peer : env.split(",")) {
+				if(peer.trim().length() > 0) {
+					peers.add(peer.trim());
+				}
+			}
+		}
+		else if(settings.get("peers") instanceof JSONArray) {
+			for(Object peer : (JSONArray) settings.get("peers")) {
+				if(peer != null) {
+					peers.add(peer.toString().trim());
+				}
+			}
+		}
+		return peers;
+
+	} // getPeers
+
+	/*
+	 * Returns the URL of a peer entry, without the Cloud Foundry instance selector.
+	 */
+	private static String getPeerURL(String peer) {
+		int selector = peer.indexOf('#');
+		return (selector < 0) ? peer : peer.substring(0, selector);
+	} // getPeerURL
+
+	/*
+	 * Returns the request headers for a peer entry: X-CF-APP-INSTANCE if the entry ends with #APP_GUID:INSTANCE_INDEX; null otherwise.
+	 */
+	private static Map<String,String> getPeerHeaders(String peer) {
+		int selector = peer.indexOf('#');
+		if((selector < 0) || (peer.substring(selector + 1).trim().length() == 0)) {
+			return null;
+		}
+		return Collections.singletonMap("X-CF-APP-INSTANCE", peer.substring(selector + 1).trim());
+	} // getPeerHeaders
+
+	/*
+	 * Sets the status of an instance based on its test report.
+	 */
+	private static void addStatus(JSONObject instance, JSONObject report) {
+
+		if((report == null) || (! (report.get("services") instanceof JSONArray))) {
+			instance.put("status", "error");
+			instance.put("error", "The response is not a test result.");
+		}
+		else if(report.get("error") != null) {
+			instance.put("status", "error");
+			instance.put("error", report.get("error"));
+		}
+		else {
+			instance.put("status", "ok");
+		}
+
+	} // addStatus
+
+	/*
+	 * Merges the per-instance test reports into a per-service list and flags instances whose success or latency differ from the other instances.
+	 */
+	static JSONArray merge(JSONArray instances, List<JSONObject> reports, JSONObject settings, JSONArray outliers) {
+
+		double latencyFactor = JSONUtil.getDouble(settings, "latency_factor", 3.0);
+		long latencyMinDelta = JSONUtil.getLong(settings, "latency_min_delta_ms", 250);
+
+		// service name -> merged result, in order of appearance
+		Map<String,JSONObject> services = new LinkedHashMap<String,JSONObject>();
+		for(int i = 0; i < reports.size(); i++) {
+			if(reports.get(i) == null || (! (reports.get(i).get("services") instanceof JSONArray))) {
+				continue;
+			}
+			for(Object svcobj : (JSONArray) reports.get(i).get("services")) {
+				JSONObject svc = (JSONObject) svcobj;
+				String svcName = String.valueOf(svc.get("svc_name"));
+				JSONObject merged = services.get(svcName);
+				if(merged == null) {
+					merged = new OrderedJSONObject();
+					merged.put("svc_name", svcName);
+					if(svc.get("on_prem_resource_type") != null) {
+						merged.put("on_prem_resource_type", svc.get("on_prem_resource_type"));
+					}
+					merged.put("instances", new JSONArray());
+					services.put(svcName, merged);
+				}
+				JSONObject entry = new OrderedJSONObject();
+				entry.put("instance", ((JSONObject) instances.get(i)).get("instance"));
+				entry.put("success", svc.get("success"));
+				entry.put("status", svc.get("status"));
+				entry.put("output", svc.get("output"));
+				if(svc.get("elapsed_ms") instanceof Number) {
+					entry.put("elapsed_ms", svc.get("elapsed_ms"));
+				}
+				((JSONArray) merged.get("instances")).add(entry);
+			}
+		}
+
+		JSONArray result = new JSONArray();
+		for(JSONObject merged : services.values()) {
+			JSONArray entries = (JSONArray) merged.get("instances");
+
+			// only tests that were run count; skipped and throttled tests are ignored
+			int passed = 0;
+			int failed = 0;
+			List<Double> latencies = new ArrayList<Double>();
+			for(Object entryobj : entries) {
+				JSONObject entry = (JSONObject) entryobj;
+				if(OnPremDataSourceProbeResult.STATUS_PASSED.equals(entry.get("status"))) {
+					passed++;
+				}
+				else if(OnPremDataSourceProbeResult.STATUS_FAILED.equals(entry.get("status"))) {
+					failed++;
+				}
+				if(entry.get("elapsed_ms") instanceof Number) {
+					latencies.add(((Number) entry.get("elapsed_ms")).doubleValue());
+				}
+			}
+			merged.put("passed", passed);
+			merged.put("failed", failed);
+			merged.put("consistent", Boolean.toString((passed == 0) || (failed == 0)));
+			if(! latencies.isEmpty()) {
+				merged.put("median_elapsed_ms", Math.round(median(latencies)));
+			}
+
+			// the minority result is the outlier; on a tie, the failed instances are flagged
+			String deviant = null;
+			if((passed > 0) && (failed > 0)) {
+				deviant = (passed < failed) ? OnPremDataSourceProbeResult.STATUS_PASSED : OnPremDataSourceProbeResult.STATUS_FAILED;
+			}
+
+			for(Object entryobj : entries) {
+				JSONObject entry = (JSONObject) entryobj;
+				if((deviant != null) && deviant.equals(entry.get("status"))) {
+					addOutlier(outliers, entry.get("instance"), merged.get("svc_name"), "success",
+							   "The test " + deviant + " on this instance, but " + (deviant.equals(OnPremDataSourceProbeResult.STATUS_FAILED) ? "passed on " + passed : "failed on " + failed) + " other instance(s).");
+				}
+				if(entry.get("elapsed_ms") instanceof Number) {
+					// compare against the other instances
+					double elapsed = ((Number) entry.get("elapsed_ms")).doubleValue();
+					List<Double> others = new ArrayList<Double>(latencies);
+					others.remove(Double.valueOf(elapsed));
+					if(! others.isEmpty()) {
+						double median = median(others);
+						if((elapsed >= latencyFactor * median) && (elapsed - median >= latencyMinDelta)) {
+							addOutlier(outliers, entry.get("instance"), merged.get("svc_name"), "latency",
+									   "The test took " + Math.round(elapsed) + " ms on this instance; the median of the other instances is " + Math.round(median) + " ms.");
+						}
+					}
+				}
+			}
+			result.add(merged);
+		}
+		return result;
+
+	} // merge
+
+	/*
+	 * Computes the success rate of each instance across all services and flags instances that are well below the median.
+	 */
+	static void findSuccessRateOutliers(JSONArray instances, List<JSONObject> reports, JSONObject settings, JSONArray outliers) {
+
+		double threshold = JSONUtil.getDouble(settings, "success_rate_delta", 0.25);
+
+		List<Double> rates = new ArrayList<Double>();
+		double[] rate = new double[reports.size()];
+		Arrays.fill(rate, -1);
+		for(int i = 0; i < reports.size(); i++) {
+			if(reports.get(i) == null || (! (reports.get(i).get("services") instanceof JSONArray))) {
+				continue;
+			}
+			int passed = 0;
+			int tested = 0;
+			for(Object svcobj : (JSONArray) reports.get(i).get("services")) {
+				Object status = ((JSONObject) svcobj).get("status");
+				if(OnPremDataSourceProbeResult.STATUS_PASSED.equals(status)) {
+					passed++;
+					tested++;
+				}
+				else if(OnPremDataSourceProbeResult.STATUS_FAILED.equals(status)) {
+					tested++;
+				}
+			}
+			if(tested > 0) {
+				rate[i] = (double) passed / tested;
+				rates.add(rate[i]);
+				((JSONObject) instances.get(i)).put("success_rate", Math.round(rate[i] * 100) / 100.0);
+			}
+		}
+
+		if(rates.size() < 2) {
+			return;
+		}
+		double median = median(rates);
+		for(int i = 0; i < rate.length; i++) {
+			if((rate[i] >= 0) && (median - rate[i] >= threshold)) {
+				addOutlier(outliers, ((JSONObject) instances.get(i)).get("instance"), null, "success_rate",
+						   "The success rate of this instance is " + Math.round(rate[i] * 100) + "%; the median of all instances is " + Math.round(median * 100) + "%.");
+			}
+		}
+
+	} // findSuccessRateOutliers
+
+	private static void addOutlier(JSONArray outliers, Object instance, Object svcName, String reason, String detail) {
+		JSONObject outlier = new OrderedJSONObject();
+		outlier.put("instance", instance);
+		if(svcName != null) {
+			outlier.put("svc_name", svcName);
+		}
+		outlier.put("reason", reason);
+		outlier.put("detail", detail);
+		outliers.add(outlier);
+	} // addOutlier
+
+	private static double median(List<Double> values) {
+		Double[] sorted = values.toArray(new Double[values.size()]);
+		Arrays.sort(sorted);
+		int mid = sorted.length / 2;
+		return (sorted.length % 2 == 1) ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+	} // median
+
+} // class
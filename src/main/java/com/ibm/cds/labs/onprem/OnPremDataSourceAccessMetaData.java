@@ -33,7 +33,7 @@ public class OnPremDataSourceAccessMetaData {
 		metadata.put("version", "0.1");
 		JSONArray supportedDataSources = new JSONArray();
 		try {
-			supportedDataSources.addAll(OnPremDataSourceAccessTestConfiguration.getSupportedDataSources());
+			supportedDataSources.addAll(OnPremDataSourceProbes.getSupportedTypes());
 			metadata.put("supported_on_prem_resource_types", supportedDataSources);
 		}
 		catch(OnPremDataSourceAccessTestConfigurationException opdsatce) {
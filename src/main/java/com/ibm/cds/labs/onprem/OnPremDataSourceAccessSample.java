@@ -0,0 +1,138 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.ibm.cds.labs.onprem.util.JSONUtil;
+import com.ibm.json.java.JSONObject;
+
+
+@Path("/sample")
+public class OnPremDataSourceAccessSample {
+
+	private static final String NDJSON = "application/x-ndjson";
+
+	/**
+	 * This method streams a read-only sample of a table in the on-premises data source of a bound user-provided service.
+	 * The number of rows and the amount of time spent are limited by the sample settings in rdbms_config.json.
+	 * @param svcName - the user-provided service name (required)
+	 * @param schema - the schema name (required)
+	 * @param table - the table name (required)
+	 * @param rows - the maximum number of rows (optional; capped at sample.max_rows)
+	 * @param timeout - the maximum number of seconds (optional; capped at sample.max_seconds)
+	 * @return Newline-delimited JSON: one object per row {"COLUMN_NAME":VALUE,...}, followed by a single trailer object
+	 *         {"_summary":{"rows":NUMBER,"elapsed_ms":NUMBER,"limit":"rows|time|none"}} or {"_error":"STRING_VALUE"}
+	 */
+	@GET
+	@Produces(NDJSON)
+	public Response sample(@QueryParam("service") final String svcName,
+			               @QueryParam("schema") final String schema,
+			               @QueryParam("table") final String table,
+			               @QueryParam("rows") String rows,
+			               @QueryParam("timeout") String timeout) {
+
+		final RelationalOnPremDataSource resource;
+		final int maxRows;
+		final long timeoutMillis;
+
+		try {
+			if(isNullOrEmpty(svcName) || isNullOrEmpty(schema) || isNullOrEmpty(table)) {
+				throw new OnPremDataSourceAccessTestException("The service, schema and table query parameters are required.");
+			}
+
+			JSONObject settings = OnPremDataSourceAccessTestConfiguration.getSettings("sample");
+			maxRows = (int) clamp(parseLong(rows, JSONUtil.getLong(settings, "default_rows", 100)), 1, JSONUtil.getLong(settings, "max_rows", 10000));
+			timeoutMillis = 1000 * clamp(parseLong(timeout, JSONUtil.getLong(settings, "default_seconds", 30)), 1, JSONUtil.getLong(settings, "max_seconds", 120));
+
+			resource = OnPremServiceBindings.getRelationalDataSource(svcName);
+		}
+		catch(OnPremDataSourceNotSupportedException opdsnsex) {
+			return error("The user-provided service references a JDBC data source of type "+ opdsnsex.getMessage() + ", which is currently not supported by this utility.");
+		}
+		catch(OnPremDataSourceAccessTestException opex) {
+			return error(opex.getMessage());
+		}
+		catch(OnPremDataSourceAccessTestConfigurationException opdsatce) {
+			return error(opdsatce.getMessage());
+		}
+
+		StreamingOutput stream = new StreamingOutput() {
+			public void write(OutputStream os) throws IOException {
+				// bounded buffer; rows are written to the socket as the buffer fills up
+				Writer out = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+				JSONObject trailer = new JSONObject();
+				try {
+					resource.connect(resource.getTimeoutProperties());
+					trailer.put("_summary", resource.sample(schema, table, maxRows, timeoutMillis, out, os));
+				}
+				catch(OnPremDataSourceAccessTestException opex) {
+					System.err.println(opex.getMessage());
+					String message = opex.getMessage();
+					if(opex.getCause() != null) {
+						message = message + " (root cause: " + opex.getCause().getMessage() + ")" ;
+					}
+					trailer.put("_error", message);
+				}
+				finally {
+					// release the connection, even if the client disconnected
+					resource.disconnect();
+				}
+				out.write(trailer.toString());
+				out.write('\n');
+				out.flush();
+			}
+		};
+
+		return Response.ok(stream, NDJSON).build();
+
+	} // sample
+
+	private static Response error(String message) {
+		JSONObject trailer = new JSONObject();
+		trailer.put("_error", message);
+		return Response.ok(trailer.toString() + "\n", NDJSON).build();
+	} // error
+
+	private static long parseLong(String value, long defaultValue) {
+		if(isNullOrEmpty(value)) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		}
+		catch(NumberFormatException nfex) {
+			return defaultValue;
+		}
+	} // parseLong
+
+	private static long clamp(long value, long min, long max) {
+		return Math.max(min, Math.min(max, value));
+	} // clamp
+
+	private static boolean isNullOrEmpty(String input) {
+		return (input == null) || (input.trim().length() < 1);
+	} // isNullOrEmpty
+
+} // class
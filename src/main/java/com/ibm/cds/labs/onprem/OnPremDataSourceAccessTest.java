@@ -13,12 +13,18 @@
 package com.ibm.cds.labs.onprem;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
 
 import com.ibm.cds.labs.onprem.util.JSONUtil;
-import com.ibm.json.java.JSON;
 import com.ibm.json.java.JSONArray;
 import com.ibm.json.java.JSONObject;
 
@@ -28,110 +34,127 @@ public class OnPremDataSourceAccessTest {
 			
 	/**
 	 * This method determines which user-provided services have been bound to the sample application and tries to connect
-	 * to the underlying on-premises data sources. The results are returned to the caller for each supported data source. If a fatal error is encountered, the optional error
-	 * property will be set.
-	 * @return A JSON string {"services":[{"svc_name":"STRING_VALUE","on_prem_resource_type":"STRING_VALUE","success":"BOOLEAN_VALUE","output":"STRING_VALUE"},...],
+	 * to the underlying on-premises data sources. A service identifies its data source using the jdbcUrl property (relational
+	 * data sources) or the url property (other data sources, such as HTTP endpoints). The probe for each data source type
+	 * is selected by URL scheme; all probes run concurrently. The results are returned to the caller for each supported data source. If a fatal error is encountered, the optional error
+	 * property will be set. Tests that do not complete within probes.timeout_seconds, or within the timeout if it is shorter, are reported as failed.
+	 * @param timeout - the maximum number of seconds to wait for the tests (optional; capped at probes.timeout_seconds)
+	 * @return A JSON string {"instance":"STRING_VALUE","services":[{"svc_name":"STRING_VALUE","on_prem_resource_type":"STRING_VALUE","success":"BOOLEAN_VALUE","status":"passed|failed|skipped|throttled","output":"STRING_VALUE","elapsed_ms":NUMBER},...],
+	 *                        "bulkheads":[{"name":"STRING_VALUE","max_concurrent":NUMBER,"in_use":NUMBER,"queue_depth":NUMBER,"rejected":NUMBER,"timed_out":NUMBER,...},...],
 	 *                        "error":"STRING_VALUE"} 
-	 *         All properties are mandatory, with the exception of the on_prem_resource_type. This property is not set if the type cannot be determined.
+	 *         All properties are mandatory, with the exception of the on_prem_resource_type and elapsed_ms. These properties are not set if the type cannot be determined.
+	 *         A status of throttled indicates that the test was not run because a concurrency limit (bulkhead) was reached.
+	 *         The instance property identifies the application instance that ran the tests.
 	 */
 	@GET
-	public String runTests() {
+	public String runTests(@QueryParam("timeout") String timeout) {
 
-		JSONObject services = null;
 		JSONArray up_services = null;
-		String message = null;
 		JSONObject testresult = new JSONObject();
 		JSONArray svclist = new JSONArray();
 
+		testresult.put("instance", getInstanceName());
+
 		try {
-			// Fetch 'VCAP_SERVICES' variable, which contains all the credentials of services bound to this application.
-			// all keys in the services JSONObject are normalized to contain only lower-case characters to make lookup easier 
-			services = (JSONObject) JSONUtil.normalize(JSON.parse(System.getenv("VCAP_SERVICES")));
-
-			if(services != null) {					
-				
-				// check whether user-provided services were bound to this application
-				up_services = (JSONArray) services.get("user-provided");
-				if(up_services != null)  {
-
-					JSONObject svc = null;
-					JSONObject svcresult = null;
-					JSONObject credentials = null;
-					String jdbcurl = null;
-
-					// process each bound user-provided service
-					for(Object serviceobj: up_services) {
-						svcresult = new JSONObject();
-						svc = (JSONObject) serviceobj;
-						svcresult.put("svc_name", (String)svc.get("name"));
-						 try {
-							 credentials =  (JSONObject)svc.get("credentials");
-							 
-							// verify that this user-define service was defined for a DB2 data source
-							 jdbcurl = (String)credentials.get("jdbcurl");
-							 if((jdbcurl == null)|| (jdbcurl.length() < 5)) {
-								 if(jdbcurl == null)
-									 jdbcurl="";
-								 // the JDBCURL property value is either not set or appears to be incorrect
-								 svcresult.put("success","false");
-								 svcresult.put("output","Test was skipped. The user-provided service does not define the jdbcUrl property or the property value "+ jdbcurl + " is invalid.");
-							 }
-							 else {
- 								 // the jdbcUrl property is  defined for this user-provided service
-								 OnPremDataSource resource = null;
-								 
-								 // the jdbcUrl property is set; it should look as follows: jdbc:<driver>://...
-								 // determine whether the driver is supported
-								 URI uri = URI.create(jdbcurl.substring(5));
-								 
-								 // save the URI scheme - it identifies the resource's type
-								 svcresult.put("on_prem_resource_type", uri.getScheme().toUpperCase());
-								 
-								 // throws OnPremDataSourceNotSupportedException if no suitable test driver is found 
-								 resource = new RelationalOnPremDataSource(uri.getScheme().toLowerCase(), (String)credentials.get("jdbcurl"), (String)credentials.get("user"), (String)credentials.get("password"));							 
-								 								 
-								 // connect to the resource
-								 resource.connect();
-								 // run the dummy query
-								 String result = resource.runQuery();
-								
-								 if(result != null) {
-									 // a result was returned; it appears that the on-premises resource is accessible
-									 svcresult.put("success","true");
-									 svcresult.put("output","The test query executed successfully on the on-premises database.");	
-								 }
-								 else {
-									 // no result was returned; it appears that the on-premises resource cannot be accessed properly
-									 svcresult.put("success","false");
-									 svcresult.put("output","The test query did not return a result from the on-premises database.");									
-								 }
-								 // disconnect from the data source to release all allocated resources
-								 resource.disconnect();
-								 
-							 } // the jdbcUrl property is  defined for this user-provided service
-						 } // try
-						 // do not catch OnPremDataSourceAccessTestConfigurationException here; it is a fatal error that needs to be processed at a higher level
-						 catch(OnPremDataSourceNotSupportedException opdsnsex) {
-							// the resource type cannot be processed
-							 svcresult.put("success","false");
-							 svcresult.put("output","Test was skipped. The user-provided service references a JDBC data source of type "+ opdsnsex.getMessage() + ", which is currently not supported by this utility.");									 							 
-						 }
-						 catch(OnPremDataSourceAccessTestException opex) {
-							 	// a problem was encountered while trying to connect to the data source or running the dummy query
-								System.err.println(opex.getMessage());
-								message = "Test failed: " + opex.getMessage();
-								if(opex.getCause() != null) {
-									message = message + " (root cause: " + opex.getCause().getMessage() + ")" ;
-								}			
-								svcresult.put("success","false");
-								svcresult.put("output",message);									
-						} // catch
-						 
-						// add the test result to the output list 
-						svclist.add(svcresult);
-					} // for
-				} // if user-provided services are defined
-			} // if(services)
+			// Fetch the user-provided services from 'VCAP_SERVICES', which contains all the credentials of services bound to this application.
+			// all keys are normalized to contain only lower-case characters to make lookup easier 
+			up_services = OnPremServiceBindings.getUserProvidedServices();
+
+			JSONObject svc = null;
+			JSONObject svcresult = null;
+			JSONObject credentials = null;
+			String url = null;
+			String scheme = null;
+			OnPremDataSourceProbe probe = null;
+
+			// pending test results, in service order
+			List<CompletableFuture<OnPremDataSourceProbeResult>> pending = new ArrayList<CompletableFuture<OnPremDataSourceProbeResult>>();
+
+			// process each bound user-provided service
+			for(Object serviceobj: up_services) {
+				svcresult = new JSONObject();
+				svc = (JSONObject) serviceobj;
+				svcresult.put("svc_name", (String)svc.get("name"));
+				credentials = (JSONObject)svc.get("credentials");
+				if(credentials == null) {
+					credentials = new JSONObject();
+				}
+
+				scheme = null;
+				url = (String)credentials.get("jdbcurl");
+				if(url != null) {
+					// relational data source; the JDBC URL should look as follows: jdbc:<driver>://...
+					scheme = OnPremServiceBindings.getScheme(url);
+				}
+				else {
+					url = (String)credentials.get("url");
+					scheme = getScheme(url);
+				}
+
+				if(scheme == null) {
+					if(url == null)
+						url="";
+					// the jdbcUrl/url property value is either not set or appears to be incorrect
+					svcresult.put("success","false");
+					svcresult.put("status",OnPremDataSourceProbeResult.STATUS_SKIPPED);
+					svcresult.put("output","Test was skipped. The user-provided service does not define the jdbcUrl or url property or the property value "+ url + " is invalid.");
+					pending.add(null);
+				}
+				else {
+					// save the URI scheme - it identifies the resource's type
+					svcresult.put("on_prem_resource_type", scheme.toUpperCase());
+
+					// throws OnPremDataSourceAccessTestConfigurationException if the configuration cannot be loaded; it is a fatal error
+					probe = OnPremDataSourceProbes.getProbe(scheme);
+					if(probe == null) {
+						// the resource type cannot be processed
+						svcresult.put("success","false");
+						svcresult.put("status",OnPremDataSourceProbeResult.STATUS_SKIPPED);
+						svcresult.put("output","Test was skipped. The user-provided service references a data source of type "+ scheme + ", which is currently not supported by this utility.");
+						pending.add(null);
+					}
+					else {
+						// start the test; it completes asynchronously
+						pending.add(probe.probe(scheme, url, credentials).toCompletableFuture());
+					}
+				}
+
+				// add the (preliminary) test result to the output list 
+				svclist.add(svcresult);
+			} // for
+
+			// wait for all tests to complete
+			long timeoutSeconds = JSONUtil.getLong(OnPremDataSourceAccessTestConfiguration.getSettings("probes"), "timeout_seconds", 60);
+			if(timeout != null) {
+				try {
+					timeoutSeconds = Math.max(1, Math.min(timeoutSeconds, Long.parseLong(timeout.trim())));
+				}
+				catch(NumberFormatException nfex) {
+					// use the configured timeout
+				}
+			}
+			long timeoutMillis = 1000 * timeoutSeconds;
+			long deadline = System.currentTimeMillis() + timeoutMillis;
+			for(int i = 0; i < pending.size(); i++) {
+				if(pending.get(i) == null) {
+					// the test was skipped
+					continue;
+				}
+				svcresult = (JSONObject) svclist.get(i);
+				try {
+					pending.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS).addTo(svcresult);
+				}
+				catch(TimeoutException toex) {
+					// a test that has not started yet is not run
+					pending.get(i).cancel(true);
+					svcresult.put("success","false");
+					svcresult.put("status",OnPremDataSourceProbeResult.STATUS_FAILED);
+					svcresult.put("output","Test failed: The test did not complete within " + (timeoutMillis / 1000) + " seconds.");
+				}
+				catch(ExecutionException eex) {
+					OnPremDataSourceProbeResult.failed(eex.getCause(), 0).addTo(svcresult);
+				}
+			}
 		} // try
 		catch(OnPremDataSourceAccessTestConfigurationException opdsatce) {
 			// fatal error thrown by OnPremDataSourceAccessTestConfiguration; a problem was encountered while trying to load/process the configuration file 
@@ -147,10 +170,45 @@ public class OnPremDataSourceAccessTest {
 		
 		// attach the list of processed services
 		testresult.put("services", svclist);
+		// report bulkhead utilization, which helps to tune the concurrency limits
+		testresult.put("bulkheads", OnPremDataSourceBulkheads.getStatistics());
 		
 		// return the result
 		return testresult.toString();
 
 	} // runTests	
+
+	/**
+	 * Identifies this application instance in test results. The ONPREM_TEST_INSTANCE environment variable takes precedence
+	 * over the Cloud Foundry instance index.
+	 * @return the instance name
+	 */
+	static String getInstanceName() {
+
+		if(System.getenv("ONPREM_TEST_INSTANCE") != null) {
+			return System.getenv("ONPREM_TEST_INSTANCE");
+		}
+		if(System.getenv("CF_INSTANCE_INDEX") != null) {
+			return "instance " + System.getenv("CF_INSTANCE_INDEX");
+		}
+		return "local";
+
+	} // getInstanceName
+
+	/*
+	 * Returns the scheme of a non-JDBC URL in lower case or null if the URL is invalid.
+	 */
+	private static String getScheme(String url) {
+		if(url == null) {
+			return null;
+		}
+		try {
+			String scheme = URI.create(url).getScheme();
+			return (scheme == null) ? null : scheme.toLowerCase();
+		}
+		catch(IllegalArgumentException iaex) {
+			return null;
+		}
+	} // getScheme
 	
 } // class
\ No newline at end of file
@@ -41,6 +41,9 @@ public class OnPremDataSourceAccessTestConfiguration {
 
 	// list of supported data source types
 	private static Map<String,DatabaseAccessTestConfig> SUPPORTED_DATA_SOURCES = new TreeMap<String,DatabaseAccessTestConfig>(String.CASE_INSENSITIVE_ORDER);
+
+	// optional top-level settings sections, such as "discovery"
+	private static JSONObject SETTINGS = new JSONObject();
 	
 	private static boolean init_done = false;
 
@@ -55,9 +58,23 @@ public class OnPremDataSourceAccessTestConfiguration {
    		  								"url_scheme": "JDBC_URL_SCHEME",
   	 	  								"display_name": "DATA_SOURCE_TYPE_DISPLAY_NAME",
    		  								"driver" : "JDBC_CLASS_NAME",
-   		   								"query" : "CURRENT_DATE_QUERY"   		
+   		   								"query" : "CURRENT_DATE_QUERY",
+   		   								"discovery" : { "exclude_schemas" : ["SCHEMA_NAME", ...] },
+   		   								"sample" : { "fetch_size" : NUMBER, "autocommit" : BOOLEAN },
+   		   								"probes" : { "timeout_properties" : ["NAME={seconds}", "NAME={millis}", ...] },
+   		   								"bulkheads" : { "per_scheme" : LIMITS, "per_target" : LIMITS },
+   		   								"write_benchmark" : { "create" : "DDL", "insert" : "SQL", "clear" : "SQL", "drop" : "DDL", "batch_properties" : ["NAME=VALUE", ...] },
+   		   								"tuning" : { "bulk_query" : "QUERY", "variants" : [{ "name" : "VARIANT_NAME", "properties" : ["NAME=VALUE", ...] }, ...] }
    		  							}, ...
- 		  						]			 
+ 		  						],
+ 		  				"discovery": { "connections" : NUMBER, "ttl_seconds" : NUMBER },
+ 		  				"bulkheads": { "global" : LIMITS, "per_scheme" : LIMITS, "per_target" : LIMITS },
+ 		  				"probes": { "blocking_threads" : NUMBER, "max_queue" : NUMBER, "timeout_seconds" : NUMBER },
+ 		  				"tuning": { "connects" : NUMBER, "iterations" : NUMBER, "bulk_runs" : NUMBER, "max_seconds" : NUMBER },
+ 		  				"cluster": { "peers" : ["URL", ...], "timeout_margin_ms" : NUMBER, "max_response_bytes" : NUMBER, "latency_factor" : NUMBER, "latency_min_delta_ms" : NUMBER, "success_rate_delta" : NUMBER },
+ 		  				"write_benchmark": { "enabled" : BOOLEAN, "rows" : NUMBER, "max_rows" : NUMBER, "max_batches" : NUMBER, "max_seconds" : NUMBER, "batch_sizes" : [NUMBER, ...] },
+ 		  				"sample": { "default_rows" : NUMBER, "max_rows" : NUMBER, "default_seconds" : NUMBER, "max_seconds" : NUMBER }
+		   where LIMITS is { "max_concurrent" : NUMBER, "max_queue" : NUMBER, "max_wait_ms" : NUMBER }
           
 		 * Example configuration for DB2 and MySQL:
 				   "connectors": [
@@ -91,6 +108,9 @@ public class OnPremDataSourceAccessTestConfiguration {
 
 				// log to console for debug purposes
 				System.out.println(config.toString());
+
+				// retain the top-level settings sections; connector definitions are processed below 
+				SETTINGS = config;
 				
 				JSONArray connectorlist = (JSONArray) config.get("connectors");
 				JSONObject cc = null;
@@ -116,7 +136,7 @@ public class OnPremDataSourceAccessTestConfiguration {
 				   	   if(cc.get("display_name") == null)	
 				   	   	 cc.put("display_name",(String)cc.get("url_scheme"));
 					   SUPPORTED_DATA_SOURCES.put((String)cc.get("url_scheme"), 
-							                      new DatabaseAccessTestConfig((String)cc.get("display_name"),(String)cc.get("driver"),(String)cc.get("query")));
+							                      new DatabaseAccessTestConfig((String)cc.get("display_name"),(String)cc.get("driver"),(String)cc.get("query"), cc));
 					}
 				}
 				
@@ -191,6 +211,26 @@ public class OnPremDataSourceAccessTestConfiguration {
 	} // getDataSourceAccessConfig
 
 
+	/**
+	 * Returns an optional top-level settings section of the configuration file, such as "discovery".
+	 * @param section - the section name (lower case)
+	 * @return the settings; guaranteed to be not null
+	 */
+	public static JSONObject getSettings(String section) 
+	 throws OnPremDataSourceAccessTestConfigurationException {
+
+		if(! init_done) {
+			init();
+		}
+
+		Object settings = SETTINGS.get(section);
+		if(settings instanceof JSONObject) {
+			return (JSONObject) settings;
+		}
+		return new JSONObject();
+
+	} // getSettings
+
 	private static boolean isNullOrEmpty(String input) {
 		if((input == null) || (input.length() <1))
 			return true;
@@ -0,0 +1,202 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+
+import com.ibm.cds.labs.onprem.util.JSONUtil;
+import com.ibm.json.java.JSONArray;
+import com.ibm.json.java.JSONObject;
+
+
+@Path("/writebenchmark")
+public class OnPremDataSourceAccessWriteBenchmark {
+
+	/**
+	 * This method measures batched insert throughput and commit latency for the on-premises data source of a bound user-provided
+	 * service. It is only run on request (POST) because it creates, fills and drops a temporary table, using the connector's
+	 * write_benchmark statements in rdbms_config.json, and only if write_benchmark.enabled is true. Connections are opened with
+	 * the connector's timeout properties (probes.timeout_properties). Each batch size is measured with the driver defaults and, if the connector
+	 * defines batch_properties (such as rewriteBatchedStatements=true for MySQL), with the batch-rewrite options enabled.
+	 * At most write_benchmark.max_batches batches (round trips) are inserted per batch size, and no further batches are started
+	 * after write_benchmark.max_seconds; if either limit was hit, the limit property is set.
+	 * @param svcName - the user-provided service name (required)
+	 * @param rows - the number of rows to insert per run (optional; capped at write_benchmark.max_rows)
+	 * @param batchSizes - comma separated list of batch sizes (optional; defaults to write_benchmark.batch_sizes)
+	 * @return A JSON string {"svc_name":"STRING_VALUE","on_prem_resource_type":"STRING_VALUE","rows":NUMBER,
+	 *                        "runs":[{"name":"STRING_VALUE","properties":["NAME=VALUE",...],"results":[{"batch_size":NUMBER,"rows":NUMBER,"rows_per_sec":NUMBER,"commit_ms":NUMBER,"limit":"rows|time|none",...},...],"error":"STRING_VALUE"},...],
+	 *                        "recommendation":{"name":"STRING_VALUE","properties":["NAME=VALUE",...],"batch_size":NUMBER,"rows_per_sec":NUMBER},"limit":"rows|time|none","elapsed_ms":NUMBER,"error":"STRING_VALUE"}
+	 *         Batch sizes that were not measured because the time limit was reached are reported as {"batch_size":NUMBER,"skipped":"true"}.
+	 */
+	@POST
+	public String benchmark(@QueryParam("service") String svcName,
+			                @QueryParam("rows") String rows,
+			                @QueryParam("batch_sizes") String batchSizes) {
+
+		JSONObject result = new JSONObject();
+		String message = null;
+		long start = System.currentTimeMillis();
+
+		result.put("svc_name", svcName);
+
+		try {
+			if((svcName == null) || (svcName.trim().length() == 0)) {
+				throw new OnPremDataSourceAccessTestException("The service query parameter is required.");
+			}
+
+			JSONObject settings = OnPremDataSourceAccessTestConfiguration.getSettings("write_benchmark");
+			if(! Boolean.parseBoolean(String.valueOf(settings.get("enabled")))) {
+				throw new OnPremDataSourceAccessTestException("The write benchmark is disabled. Set write_benchmark.enabled to true in the configuration file to enable it.");
+			}
+
+			RelationalOnPremDataSource resource = OnPremServiceBindings.getRelationalDataSource(svcName);
+			DatabaseAccessTestConfig config = resource.getAccessTestConfig();
+			result.put("on_prem_resource_type", config.getURLDisplayName());
+			long rowcount = JSONUtil.getLong(settings, "rows", 5000);
+			if(rows != null) {
+				try {
+					rowcount = Long.parseLong(rows.trim());
+				}
+				catch(NumberFormatException nfex) {
+					throw new OnPremDataSourceAccessTestException("The rows query parameter value " + rows + " is invalid.");
+				}
+			}
+			rowcount = Math.max(1, Math.min(rowcount, JSONUtil.getLong(settings, "max_rows", 100000)));
+			result.put("rows", rowcount);
+			int maxBatches = Math.max(1, JSONUtil.getInt(settings, "max_batches", 1000));
+			long maxSeconds = JSONUtil.getLong(settings, "max_seconds", 120);
+			long deadline = start + 1000 * maxSeconds;
+			String limit = "none";
+
+			List<Integer> sizes = new ArrayList<Integer>();
+			if(batchSizes != null) {
+				for(String size : batchSizes.split(",")) {
+					try {
+						if(size.trim().length() > 0) {
+							sizes.add(Integer.valueOf(Math.max(1, Integer.parseInt(size.trim()))));
+						}
+					}
+					catch(NumberFormatException nfex) {
+						throw new OnPremDataSourceAccessTestException("The batch_sizes query parameter value " + batchSizes + " is invalid.");
+					}
+				}
+			}
+			else if(settings.get("batch_sizes") instanceof JSONArray) {
+				for(Object size : (JSONArray) settings.get("batch_sizes")) {
+					sizes.add(Integer.valueOf(Math.max(1, ((Number) size).intValue())));
+				}
+			}
+			if(sizes.isEmpty()) {
+				sizes.add(Integer.valueOf(100));
+			}
+
+			// driver defaults and, if available, batch-rewrite options
+			List<JSONObject> runs = new ArrayList<JSONObject>();
+			JSONObject run = new JSONObject();
+			run.put("name", "driver defaults");
+			run.put("properties", new JSONArray());
+			runs.add(run);
+			Object batchProperties = config.getWriteBenchmarkOptions().get("batch_properties");
+			if((batchProperties instanceof JSONArray) && (! ((JSONArray) batchProperties).isEmpty())) {
+				run = new JSONObject();
+				run.put("name", "batch rewrite");
+				JSONArray properties = new JSONArray();
+				properties.addAll((JSONArray) batchProperties);
+				run.put("properties", properties);
+				runs.add(run);
+			}
+
+			JSONObject recommendation = null;
+			JSONArray runlist = new JSONArray();
+			for(JSONObject r : runs) {
+				if(System.currentTimeMillis() >= deadline) {
+					r.put("error", "The run was skipped because the time limit of " + maxSeconds + " seconds was reached.");
+					limit = "time";
+					runlist.add(r);
+					continue;
+				}
+				try {
+					// batch-rewrite options override the timeout properties
+					Properties properties = resource.getTimeoutProperties();
+					properties.putAll(DatabaseAccessTestConfig.toProperties(r.get("properties")));
+					JSONArray results = resource.benchmarkWrites(properties, (int) rowcount, sizes, maxBatches, deadline);
+					r.put("results", results);
+					for(Object measurementobj : results) {
+						JSONObject measurement = (JSONObject) measurementobj;
+						if((measurement.get("skipped") != null) || "time".equals(measurement.get("limit"))) {
+							limit = "time";
+						}
+						else if("rows".equals(measurement.get("limit")) && "none".equals(limit)) {
+							limit = "rows";
+						}
+						if(measurement.get("rows_per_sec") == null) {
+							// not measured
+							continue;
+						}
+						if((recommendation == null) || (((Number) measurement.get("rows_per_sec")).longValue() > ((Number) recommendation.get("rows_per_sec")).longValue())) {
+							recommendation = new JSONObject();
+							recommendation.put("name", r.get("name"));
+							recommendation.put("properties", r.get("properties"));
+							recommendation.put("batch_size", measurement.get("batch_size"));
+							recommendation.put("rows_per_sec", measurement.get("rows_per_sec"));
+						}
+					}
+				}
+				catch(OnPremDataSourceAccessTestException opex) {
+					message = opex.getMessage();
+					if(opex.getCause() != null) {
+						message = message + " (root cause: " + opex.getCause().getMessage() + ")" ;
+					}
+					r.put("error", message);
+				}
+				runlist.add(r);
+			}
+			result.put("runs", runlist);
+			result.put("limit", limit);
+
+			if(recommendation != null) {
+				result.put("recommendation", recommendation);
+			}
+			else {
+				result.put("error", "The write benchmark could not be run.");
+			}
+		}
+		catch(OnPremDataSourceNotSupportedException opdsnsex) {
+			result.put("error", "The user-provided service references a JDBC data source of type "+ opdsnsex.getMessage() + ", which is currently not supported by this utility.");
+		}
+		catch(OnPremDataSourceAccessTestException opex) {
+			result.put("error", opex.getMessage());
+		}
+		catch(OnPremDataSourceAccessTestConfigurationException opdsatce) {
+			result.put("error", opdsatce.getMessage());
+		}
+		catch(Exception ex) {
+			// an unexpected error occurred; dump information to console
+			System.err.println(ex.getMessage());
+			ex.printStackTrace(System.err);
+			result.put("error", "The following error occurred: " + ex.getMessage());
+		}
+
+		result.put("elapsed_ms", System.currentTimeMillis() - start);
+
+		return result.toString();
+
+	} // benchmark
+
+} // class
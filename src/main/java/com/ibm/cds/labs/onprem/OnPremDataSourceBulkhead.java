@@ -0,0 +1,167 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.json.java.JSONObject;
+
+/**
+ * Limits the number of concurrent operations, such as open connections, against a resource. Callers that cannot obtain
+ * a permit immediately wait in a bounded FIFO queue for at most maxWaitMillis; if the queue is full, the request is rejected
+ * without waiting. Permits are handed to waiters asynchronously, so waiting does not require a blocked thread.
+ * @author ptitzler
+ *
+ */
+public class OnPremDataSourceBulkhead {
+
+	private final String name;
+	private final int maxConcurrent;
+	private final int maxQueue;
+	private final long maxWaitMillis;
+	private final Semaphore permits;
+	private final ScheduledExecutorService timer;
+
+	// pending requests, in arrival order (guarded by this)
+	private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<CompletableFuture<Void>>();
+
+	// statistics (guarded by this)
+	private long acquired = 0;
+	private long rejected = 0;
+	private long timedOut = 0;
+	private int peakQueueDepth = 0;
+
+	/**
+	 * Constructor.
+	 * @param name - identifies the limited resource, such as target:dbhost:50000
+	 * @param maxConcurrent - the maximum number of concurrent operations
+	 * @param maxQueue - the maximum number of waiting requests
+	 * @param maxWaitMillis - the maximum amount of time a request waits for a permit
+	 * @param timer - used to expire waiting requests
+	 */
+	protected OnPremDataSourceBulkhead(String name, int maxConcurrent, int maxQueue, long maxWaitMillis, ScheduledExecutorService timer) {
+		this.name = name;
+		this.maxConcurrent = Math.max(1, maxConcurrent);
+		this.maxQueue = Math.max(0, maxQueue);
+		this.maxWaitMillis = Math.max(0, maxWaitMillis);
+		this.permits = new Semaphore(this.maxConcurrent, true);
+		this.timer = timer;
+	} // constructor
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Requests a permit.
+	 * @return completes when the permit was granted, or exceptionally with OnPremDataSourceThrottledException if the
+	 *         request was rejected or did not obtain a permit in time
+	 */
+	public CompletableFuture<Void> acquire() {
+
+		final CompletableFuture<Void> waiter = new CompletableFuture<Void>();
+
+		synchronized(this) {
+			if(waiters.isEmpty() && permits.tryAcquire()) {
+				acquired++;
+				waiter.complete(null);
+				return waiter;
+			}
+			if(waiters.size() >= maxQueue) {
+				// fast rejection
+				rejected++;
+				waiter.completeExceptionally(new OnPremDataSourceThrottledException("The concurrency limit for " + name + " (" + maxConcurrent + ") was reached and " + waiters.size() + " request(s) are already waiting."));
+				return waiter;
+			}
+			waiters.add(waiter);
+			peakQueueDepth = Math.max(peakQueueDepth, waiters.size());
+		}
+
+		timer.schedule(new Runnable() {
+			public void run() {
+				boolean expired = false;
+				synchronized(OnPremDataSourceBulkhead.this) {
+					// the waiter is only in the queue if it has not been granted a permit yet
+					expired = waiters.remove(waiter);
+					if(expired) {
+						timedOut++;
+					}
+				}
+				if(expired) {
+					waiter.completeExceptionally(new OnPremDataSourceThrottledException("No " + name + " connection slot became available within " + maxWaitMillis + " ms (limit: " + maxConcurrent + ")."));
+				}
+			}
+		}, maxWaitMillis, TimeUnit.MILLISECONDS);
+
+		return waiter;
+
+	} // acquire
+
+	/**
+	 * Requests a permit without waiting. Unlike acquire, a request that cannot be granted is not counted as rejected.
+	 * @return true if the permit was granted
+	 */
+	public synchronized boolean tryAcquire() {
+
+		if(waiters.isEmpty() && permits.tryAcquire()) {
+			acquired++;
+			return true;
+		}
+		return false;
+
+	} // tryAcquire
+
+	/**
+	 * Returns a permit. If requests are waiting, the permit is handed to the oldest one.
+	 */
+	public void release() {
+
+		CompletableFuture<Void> next = null;
+		synchronized(this) {
+			next = waiters.poll();
+			if(next == null) {
+				permits.release();
+				return;
+			}
+			acquired++;
+		}
+		// complete outside the lock; dependent actions may run on this thread
+		next.complete(null);
+
+	} // release
+
+	/**
+	 * @return {"name":"STRING_VALUE","max_concurrent":NUMBER,"in_use":NUMBER,"max_queue":NUMBER,"queue_depth":NUMBER,
+	 *          "peak_queue_depth":NUMBER,"acquired":NUMBER,"rejected":NUMBER,"timed_out":NUMBER}
+	 */
+	public synchronized JSONObject getStatistics() {
+
+		JSONObject statistics = new JSONObject();
+		statistics.put("name", name);
+		statistics.put("max_concurrent", maxConcurrent);
+		statistics.put("in_use", maxConcurrent - permits.availablePermits());
+		statistics.put("max_queue", maxQueue);
+		statistics.put("queue_depth", waiters.size());
+		statistics.put("peak_queue_depth", peakQueueDepth);
+		statistics.put("acquired", acquired);
+		statistics.put("rejected", rejected);
+		statistics.put("timed_out", timedOut);
+		return statistics;
+
+	} // getStatistics
+
+} // class
@@ -0,0 +1,241 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.ibm.cds.labs.onprem.util.JSONUtil;
+import com.ibm.json.java.JSONArray;
+import com.ibm.json.java.JSONObject;
+
+/**
+ * Registry of the bulkheads that limit concurrent access to on-premises data sources. Each operation requires a permit from
+ * three bulkheads: one for the target (host and port), one for the data source type (URL scheme) and a global one. Permits
+ * are requested in that order, so that a request that is waiting for a busy target does not hold global capacity.
+ * Limits are defined in the bulkheads section of rdbms_config.json; connectors can override the per_scheme and per_target limits.
+ * @author ptitzler
+ *
+ */
+public class OnPremDataSourceBulkheads {
+
+	private static OnPremDataSourceBulkhead GLOBAL = null;
+	// bulkhead name -> bulkhead (guarded by the class lock)
+	private static final Map<String,OnPremDataSourceBulkhead> BULKHEADS = new TreeMap<String,OnPremDataSourceBulkhead>(String.CASE_INSENSITIVE_ORDER);
+	private static ScheduledExecutorService TIMER = null;
+
+	/**
+	 * A set of permits that was granted for a single operation.
+	 */
+	public static class Permit {
+		private final List<OnPremDataSourceBulkhead> held;
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		Permit(List<OnPremDataSourceBulkhead> held) {
+			this.held = held;
+		}
+
+		/**
+		 * Returns all permits. Subsequent invocations have no effect.
+		 */
+		public void release() {
+			if(released.compareAndSet(false, true)) {
+				for(int i = held.size() - 1; i >= 0; i--) {
+					held.get(i).release();
+				}
+			}
+		}
+	} // Permit
+
+	/*
+	 * Returns the bulkhead with the given name, creating it if necessary.
+	 */
+	private static synchronized OnPremDataSourceBulkhead getBulkhead(String level, String key, String scheme)
+	 throws OnPremDataSourceAccessTestConfigurationException {
+
+		if(TIMER == null) {
+			TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "onprem-bulkhead-timer");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+
+		if("global".equals(level)) {
+			if(GLOBAL == null) {
+				GLOBAL = create("global", OnPremDataSourceAccessTestConfiguration.getSettings("bulkheads"), "global");
+			}
+			return GLOBAL;
+		}
+
+		String name = ("per_scheme".equals(level) ? "scheme:" : "target:") + key;
+		OnPremDataSourceBulkhead bulkhead = BULKHEADS.get(name);
+		if(bulkhead == null) {
+			// connector-specific limits take precedence
+			JSONObject settings = OnPremDataSourceAccessTestConfiguration.getSettings("bulkheads");
+			DatabaseAccessTestConfig connector = OnPremDataSourceAccessTestConfiguration.getDataSourceAccessConfig(scheme);
+			if((connector != null) && (connector.getOptions("bulkheads").get(level) != null)) {
+				settings = connector.getOptions("bulkheads");
+			}
+			bulkhead = create(name, settings, level);
+			BULKHEADS.put(name, bulkhead);
+		}
+		return bulkhead;
+
+	} // getBulkhead
+
+	private static OnPremDataSourceBulkhead create(String name, JSONObject settings, String level) {
+		Object limits = settings.get(level);
+		JSONObject l = (limits instanceof JSONObject) ? (JSONObject) limits : new JSONObject();
+		return new OnPremDataSourceBulkhead(name,
+				                            JSONUtil.getInt(l, "max_concurrent", "per_target".equals(level) ? 4 : 16),
+				                            JSONUtil.getInt(l, "max_queue", 16),
+				                            JSONUtil.getLong(l, "max_wait_ms", 10000),
+				                            TIMER);
+	} // create
+
+	/**
+	 * Requests permits for an operation on a data source.
+	 * @param scheme - the URL scheme in lower case, such as db2
+	 * @param target - identifies the data source instance, such as host:port
+	 * @return completes when all permits were granted, or exceptionally with OnPremDataSourceThrottledException
+	 */
+	public static CompletableFuture<Permit> acquire(String scheme, String target) {
+
+		CompletableFuture<Permit> result = new CompletableFuture<Permit>();
+		try {
+			List<OnPremDataSourceBulkhead> chain = Arrays.asList(getBulkhead("per_target", target, scheme),
+					                                             getBulkhead("per_scheme", scheme, scheme),
+					                                             getBulkhead("global", null, scheme));
+			acquireNext(chain, new ArrayList<OnPremDataSourceBulkhead>(), result);
+		}
+		catch(OnPremDataSourceAccessTestConfigurationException opdsatce) {
+			result.completeExceptionally(opdsatce);
+		}
+		return result;
+
+	} // acquire
+
+	private static void acquireNext(final List<OnPremDataSourceBulkhead> chain, final List<OnPremDataSourceBulkhead> held, final CompletableFuture<Permit> result) {
+
+		if(held.size() == chain.size()) {
+			result.complete(new Permit(held));
+			return;
+		}
+
+		final OnPremDataSourceBulkhead next = chain.get(held.size());
+		next.acquire().whenComplete(new BiConsumer<Void,Throwable>() {
+			public void accept(Void v, Throwable t) {
+				if(t != null) {
+					// return the permits that were already granted
+					new Permit(held).release();
+					result.completeExceptionally(t);
+				}
+				else {
+					held.add(next);
+					acquireNext(chain, held, result);
+				}
+			}
+		});
+
+	} // acquireNext
+
+	/**
+	 * Requests permits for an operation on a data source if they are available immediately.
+	 * @param scheme - the URL scheme in lower case, such as db2
+	 * @param target - identifies the data source instance, such as host:port
+	 * @return the permits, or null if at least one bulkhead has no permit available
+	 * @throws OnPremDataSourceAccessTestConfigurationException if the bulkhead configuration could not be loaded
+	 */
+	public static Permit tryAcquire(String scheme, String target)
+	 throws OnPremDataSourceAccessTestConfigurationException {
+
+		List<OnPremDataSourceBulkhead> chain = Arrays.asList(getBulkhead("per_target", target, scheme),
+				                                             getBulkhead("per_scheme", scheme, scheme),
+				                                             getBulkhead("global", null, scheme));
+		List<OnPremDataSourceBulkhead> held = new ArrayList<OnPremDataSourceBulkhead>();
+		for(OnPremDataSourceBulkhead bulkhead : chain) {
+			if(! bulkhead.tryAcquire()) {
+				new Permit(held).release();
+				return null;
+			}
+			held.add(bulkhead);
+		}
+		return new Permit(held);
+
+	} // tryAcquire
+
+	/**
+	 * Requests permits for an operation on a data source and waits until they are granted.
+	 * @param scheme - the URL scheme in lower case, such as db2
+	 * @param target - identifies the data source instance, such as host:port
+	 * @return the permits
+	 * @throws OnPremDataSourceThrottledException if the request was rejected or did not obtain the permits in time
+	 * @throws OnPremDataSourceAccessTestException if the bulkhead configuration could not be loaded or the thread was interrupted
+	 */
+	public static Permit acquireBlocking(String scheme, String target)
+	 throws OnPremDataSourceAccessTestException {
+
+		CompletableFuture<Permit> permit = acquire(scheme, target);
+		try {
+			return permit.get();
+		}
+		catch(ExecutionException eex) {
+			if(eex.getCause() instanceof OnPremDataSourceAccessTestException) {
+				throw (OnPremDataSourceAccessTestException) eex.getCause();
+			}
+			throw new OnPremDataSourceAccessTestException("Failed to obtain a connection slot for " + target + ".", eex.getCause());
+		}
+		catch(InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			// if the permits are granted later, return them
+			permit.thenAccept(new Consumer<Permit>() {
+				public void accept(Permit p) {
+					p.release();
+				}
+			});
+			throw new OnPremDataSourceAccessTestException("Interrupted while waiting for a connection slot for " + target + ".", iex);
+		}
+
+	} // acquireBlocking
+
+	/**
+	 * @return the statistics of all bulkheads that are in use; refer to OnPremDataSourceBulkhead.getStatistics
+	 */
+	public static synchronized JSONArray getStatistics() {
+
+		JSONArray statistics = new JSONArray();
+		if(GLOBAL != null) {
+			statistics.add(GLOBAL.getStatistics());
+		}
+		for(OnPremDataSourceBulkhead bulkhead : BULKHEADS.values()) {
+			statistics.add(bulkhead.getStatistics());
+		}
+		return statistics;
+
+	} // getStatistics
+
+} // class
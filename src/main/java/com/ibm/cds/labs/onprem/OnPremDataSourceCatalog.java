@@ -0,0 +1,265 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.ibm.json.java.JSONArray;
+import com.ibm.json.java.JSONObject;
+
+/**
+ * In-memory catalog of the schemas, tables and columns that are visible through an on-premises data source.
+ * Each schema is loaded and expires independently, which allows for incremental refreshes. Name lookups are case-insensitive.
+ * @author ptitzler
+ *
+ */
+public class OnPremDataSourceCatalog {
+
+	// schema name -> schema entry
+	private final Map<String,SchemaEntry> schemas = new TreeMap<String,SchemaEntry>(String.CASE_INSENSITIVE_ORDER);
+
+	// time-to-live (in milliseconds) of the schema list and of each schema entry
+	private final long ttl;
+
+	// time the schema list was last refreshed; 0 if it was never loaded
+	private long schemaListLoaded = 0;
+
+	// serializes crawls of the same data source
+	private final Object refreshLock = new Object();
+
+	/**
+	 * Constructor.
+	 * @param ttl - the time-to-live of cached catalog information, in milliseconds
+	 */
+	protected OnPremDataSourceCatalog(long ttl) {
+		this.ttl = ttl;
+	} // constructor
+
+	/**
+	 * @return the lock that must be held while the catalog is being refreshed
+	 */
+	protected Object getRefreshLock() {
+		return refreshLock;
+	}
+
+	/**
+	 * @param now - the current time
+	 * @return true if the list of schemas needs to be reloaded
+	 */
+	protected synchronized boolean isSchemaListStale(long now) {
+		return (now - schemaListLoaded) >= ttl;
+	}
+
+	/**
+	 * Replaces the list of known schemas. Entries for schemas that no longer exist are removed,
+	 * cached entries for all other schemas are retained.
+	 * @param names - the schemas that are currently visible
+	 * @param now - the current time
+	 */
+	protected synchronized void setSchemaList(Collection<String> names, long now) {
+		TreeSet<String> current = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+		current.addAll(names);
+		// drop schemas that no longer exist
+		Iterator<String> it = schemas.keySet().iterator();
+		while(it.hasNext()) {
+			if(! current.contains(it.next())) {
+				it.remove();
+			}
+		}
+		// add placeholders for new schemas; they are crawled on demand
+		for(String name : current) {
+			if(! schemas.containsKey(name)) {
+				schemas.put(name, new SchemaEntry(name));
+			}
+		}
+		schemaListLoaded = now;
+	} // setSchemaList
+
+	/**
+	 * Returns the schemas that have not been loaded yet or whose cached information has expired.
+	 * @param names - the schemas of interest; null selects all known schemas
+	 * @param now - the current time
+	 * @return the list of schema names; guaranteed to be not null
+	 */
+	protected synchronized List<String> getStaleSchemas(Collection<String> names, long now) {
+		List<String> stale = new ArrayList<String>();
+		Collection<String> candidates = (names == null) ? schemas.keySet() : names;
+		SchemaEntry entry = null;
+		for(String name : candidates) {
+			entry = schemas.get(name);
+			if(entry == null) {
+				// unknown schema; nothing to crawl
+				continue;
+			}
+			if((entry.tables == null) || ((now - entry.loaded) >= ttl)) {
+				stale.add(entry.name);
+			}
+		}
+		return stale;
+	} // getStaleSchemas
+
+	/**
+	 * Stores the tables and columns of a schema.
+	 * @param name - the schema name
+	 * @param tables - table name -> column names (in ordinal order)
+	 * @param now - the current time
+	 */
+	protected synchronized void putSchema(String name, Map<String,List<String>> tables, long now) {
+		SchemaEntry entry = new SchemaEntry(name);
+		entry.tables = new TreeMap<String,List<String>>(String.CASE_INSENSITIVE_ORDER);
+		entry.tables.putAll(tables);
+		entry.loaded = now;
+		schemas.put(name, entry);
+	} // putSchema
+
+	/**
+	 * Forces a reload of the schema list and of all schemas on the next refresh.
+	 */
+	protected synchronized void invalidate() {
+		schemaListLoaded = 0;
+		for(SchemaEntry entry : schemas.values()) {
+			entry.loaded = 0;
+		}
+	} // invalidate
+
+	/**
+	 * @return the names of all known schemas
+	 */
+	public synchronized List<String> getSchemas() {
+		List<String> names = new ArrayList<String>();
+		for(SchemaEntry entry : schemas.values()) {
+			names.add(entry.name);
+		}
+		return names;
+	}
+
+	/**
+	 * @param schema - the schema name
+	 * @return true if the schema exists
+	 */
+	public synchronized boolean hasSchema(String schema) {
+		return schemas.containsKey(schema);
+	}
+
+	/**
+	 * @param schema - the schema name
+	 * @param table - the table or view name
+	 * @return true if the table exists in the schema
+	 */
+	public synchronized boolean hasTable(String schema, String table) {
+		return getColumns(schema, table) != null;
+	}
+
+	/**
+	 * @param schema - the schema name
+	 * @param table - the table or view name
+	 * @return the table's column names in ordinal order or null if the table does not exist or the schema has not been loaded
+	 */
+	public synchronized List<String> getColumns(String schema, String table) {
+		SchemaEntry entry = schemas.get(schema);
+		if((entry == null) || (entry.tables == null)) {
+			return null;
+		}
+		List<String> columns = entry.tables.get(table);
+		return (columns == null) ? null : Collections.unmodifiableList(columns);
+	} // getColumns
+
+	/**
+	 * Returns the table name as it is stored in the database, which is required to construct quoted identifiers.
+	 * @param schema - the schema name
+	 * @param table - the table or view name
+	 * @return a two-element array {schema, table}, using the stored spelling of both names, or null if the table does not exist
+	 */
+	public synchronized String[] resolveTable(String schema, String table) {
+		SchemaEntry entry = schemas.get(schema);
+		if((entry == null) || (entry.tables == null) || (! entry.tables.containsKey(table))) {
+			return null;
+		}
+		// the comparator is case-insensitive; ceilingKey returns the stored key
+		return new String[] {entry.name, entry.tables.ceilingKey(table)};
+	} // resolveTable
+
+	/**
+	 * Determines which of the expected columns are not defined for a table.
+	 * @param schema - the schema name
+	 * @param table - the table or view name
+	 * @param expected - the expected column names
+	 * @return the missing column names (empty if all columns exist) or null if the table does not exist
+	 */
+	public synchronized List<String> getMissingColumns(String schema, String table, Collection<String> expected) {
+		List<String> columns = getColumns(schema, table);
+		if(columns == null) {
+			return null;
+		}
+		TreeSet<String> defined = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+		defined.addAll(columns);
+		List<String> missing = new ArrayList<String>();
+		for(String column : expected) {
+			if(! defined.contains(column)) {
+				missing.add(column);
+			}
+		}
+		return missing;
+	} // getMissingColumns
+
+	/**
+	 * Adds a JSON representation of the catalog to a JSON object: {"schemas":[{"name":"STRING_VALUE","loaded":"BOOLEAN_VALUE","tables":{"TABLE_NAME":["COLUMN_NAME",...],...}},...]}
+	 * @param catalog - the JSON object to be populated
+	 * @param schema - the schema name; null selects all schemas
+	 */
+	public synchronized void addTo(JSONObject catalog, String schema) {
+		JSONArray schemalist = new JSONArray();
+		for(SchemaEntry entry : schemas.values()) {
+			if((schema != null) && (! entry.name.equalsIgnoreCase(schema))) {
+				continue;
+			}
+			JSONObject s = new JSONObject();
+			s.put("name", entry.name);
+			s.put("loaded", Boolean.toString(entry.tables != null));
+			if(entry.tables != null) {
+				JSONObject tables = new JSONObject();
+				for(Map.Entry<String,List<String>> table : entry.tables.entrySet()) {
+					JSONArray columns = new JSONArray();
+					columns.addAll(table.getValue());
+					tables.put(table.getKey(), columns);
+				}
+				s.put("tables", tables);
+			}
+			schemalist.add(s);
+		}
+		catalog.put("schemas", schemalist);
+	} // addTo
+
+	/*
+	 * Cached information for a single schema
+	 */
+	private static class SchemaEntry {
+		final String name;
+		// table name -> column names; null if the schema has not been crawled yet
+		TreeMap<String,List<String>> tables = null;
+		// time the schema was crawled
+		long loaded = 0;
+
+		SchemaEntry(String name) {
+			this.name = name;
+		}
+	} // SchemaEntry
+
+} // class
@@ -0,0 +1,54 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.util.Collection;
+import java.util.concurrent.CompletionStage;
+
+import com.ibm.json.java.JSONObject;
+
+/**
+ * Service provider interface for asynchronous on-premises data source connectivity tests. Implementations are discovered
+ * using java.util.ServiceLoader (META-INF/services/com.ibm.cds.labs.onprem.OnPremDataSourceProbe) and selected by the scheme 
+ * of the URL that a user-provided service defines. Implementations must provide a public no-argument constructor and must be thread-safe.
+ * @author ptitzler
+ *
+ */
+public interface OnPremDataSourceProbe {
+
+	/**
+	 * @param scheme - a URL scheme in lower case, such as db2 (for jdbc:db2://...) or http
+	 * @return true if this probe can test data sources of this type
+	 * @throws OnPremDataSourceAccessTestConfigurationException if the configuration file could not be processed
+	 */
+	boolean supports(String scheme) 
+	 throws OnPremDataSourceAccessTestConfigurationException;
+
+	/**
+	 * @return the display names of the data source types that this probe can test, such as DB2
+	 * @throws OnPremDataSourceAccessTestConfigurationException if the configuration file could not be processed
+	 */
+	Collection<String> getSupportedTypes() 
+	 throws OnPremDataSourceAccessTestConfigurationException;
+
+	/**
+	 * Tests whether the data source is accessible. This method must not block; problems are reported as unsuccessful results
+	 * and not by completing the stage exceptionally.
+	 * @param scheme - the URL scheme in lower case
+	 * @param url - the URL of the data source, as defined by the user-provided service
+	 * @param credentials - the user-provided service credentials (keys are normalized to lower case)
+	 * @return the pending test result
+	 */
+	CompletionStage<OnPremDataSourceProbeResult> probe(String scheme, String url, JSONObject credentials);
+
+} // interface
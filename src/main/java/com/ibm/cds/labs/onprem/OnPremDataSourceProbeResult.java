@@ -0,0 +1,102 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import com.ibm.json.java.JSONObject;
+
+/**
+ * The outcome of a single connectivity test.
+ * @author ptitzler
+ *
+ */
+public class OnPremDataSourceProbeResult {
+
+	public static final String STATUS_PASSED = "passed";
+	public static final String STATUS_FAILED = "failed";
+	public static final String STATUS_SKIPPED = "skipped";
+	public static final String STATUS_THROTTLED = "throttled";
+
+	private final String status;
+	private final boolean success;
+	private final String output;
+	private final long elapsed;
+
+	/**
+	 * Constructor.
+	 * @param success - true if the data source is accessible
+	 * @param output - a human-readable description of the outcome
+	 * @param elapsed - the test duration in milliseconds
+	 */
+	public OnPremDataSourceProbeResult(boolean success, String output, long elapsed) {
+		this(success ? STATUS_PASSED : STATUS_FAILED, output, elapsed);
+	} // constructor
+
+	/**
+	 * Constructor.
+	 * @param status - one of the STATUS_* constants; only STATUS_PASSED indicates success
+	 * @param output - a human-readable description of the outcome
+	 * @param elapsed - the test duration in milliseconds
+	 */
+	public OnPremDataSourceProbeResult(String status, String output, long elapsed) {
+		this.status = status;
+		this.success = STATUS_PASSED.equals(status);
+		this.output = output;
+		this.elapsed = elapsed;
+	} // constructor
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public String getOutput() {
+		return output;
+	}
+
+	public long getElapsedMillis() {
+		return elapsed;
+	}
+
+	/**
+	 * Adds the success, status, output and elapsed_ms properties to a service test result.
+	 * @param svcresult - the service test result
+	 */
+	public void addTo(JSONObject svcresult) {
+		svcresult.put("success", Boolean.toString(success));
+		svcresult.put("status", status);
+		svcresult.put("output", output);
+		svcresult.put("elapsed_ms", elapsed);
+	} // addTo
+
+	/**
+	 * Creates an unsuccessful result for a test that failed with an exception, including the root cause. 
+	 * OnPremDataSourceThrottledException yields a result with status STATUS_THROTTLED.
+	 * @param t - the exception
+	 * @param elapsed - the test duration in milliseconds
+	 */
+	public static OnPremDataSourceProbeResult failed(Throwable t, long elapsed) {
+		if(t instanceof OnPremDataSourceThrottledException) {
+			// a concurrency limit was reached; the data source was not accessed
+			return new OnPremDataSourceProbeResult(STATUS_THROTTLED, "Test was throttled: " + t.getMessage(), elapsed);
+		}
+		String message = "Test failed: " + t.getMessage();
+		if((t.getCause() != null) && (t.getCause() != t)) {
+			message = message + " (root cause: " + t.getCause().getMessage() + ")" ;
+		}
+		return new OnPremDataSourceProbeResult(false, message, elapsed);
+	} // failed
+
+} // class
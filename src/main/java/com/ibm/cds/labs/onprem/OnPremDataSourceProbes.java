@@ -0,0 +1,79 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.TreeSet;
+
+/**
+ * Registry of the OnPremDataSourceProbe implementations that are available through java.util.ServiceLoader.
+ * @author ptitzler
+ *
+ */
+public class OnPremDataSourceProbes {
+
+	private static List<OnPremDataSourceProbe> PROBES = null;
+
+	private static synchronized List<OnPremDataSourceProbe> getProbes() {
+
+		if(PROBES == null) {
+			// ServiceLoader instances are not thread-safe; load all providers once
+			List<OnPremDataSourceProbe> probes = new ArrayList<OnPremDataSourceProbe>();
+			Iterator<OnPremDataSourceProbe> it = ServiceLoader.load(OnPremDataSourceProbe.class, OnPremDataSourceProbe.class.getClassLoader()).iterator();
+			while(it.hasNext()) {
+				probes.add(it.next());
+			}
+			PROBES = probes;
+		}
+		return PROBES;
+
+	} // getProbes
+
+	/**
+	 * Returns the probe for a data source type.
+	 * @param scheme - a URL scheme in lower case
+	 * @return the first probe that supports the scheme or null if the data source type is not supported
+	 * @throws OnPremDataSourceAccessTestConfigurationException if the configuration file could not be processed
+	 */
+	public static OnPremDataSourceProbe getProbe(String scheme) 
+	 throws OnPremDataSourceAccessTestConfigurationException {
+
+		for(OnPremDataSourceProbe probe : getProbes()) {
+			if(probe.supports(scheme)) {
+				return probe;
+			}
+		}
+		return null;
+
+	} // getProbe
+
+	/**
+	 * Returns the display names of all data source types that can be tested.
+	 * @return a sorted list; guaranteed to be not null
+	 * @throws OnPremDataSourceAccessTestConfigurationException if the configuration file could not be processed
+	 */
+	public static List<String> getSupportedTypes()
+	 throws OnPremDataSourceAccessTestConfigurationException {
+
+		TreeSet<String> types = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+		for(OnPremDataSourceProbe probe : getProbes()) {
+			types.addAll(probe.getSupportedTypes());
+		}
+		return new ArrayList<String>(types);
+
+	} // getSupportedTypes
+
+} // class
@@ -0,0 +1,31 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+/**
+ * Indicates that a request was rejected by a bulkhead because a concurrency limit was reached
+ * @author ptitzler
+ *
+ */
+public class OnPremDataSourceThrottledException extends OnPremDataSourceAccessTestException {
+
+	private static final long serialVersionUID = 1L;
+
+	public OnPremDataSourceThrottledException(String message) {
+		super(message);
+	}
+
+	public OnPremDataSourceThrottledException(String message, Throwable throwable) {
+		super(message, throwable);
+	}
+} // class
\ No newline at end of file
@@ -0,0 +1,147 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.io.IOException;
+import java.net.URI;
+
+import com.ibm.cds.labs.onprem.util.JSONUtil;
+import com.ibm.json.java.JSON;
+import com.ibm.json.java.JSONArray;
+import com.ibm.json.java.JSONObject;
+
+/**
+ * Provides access to the user-provided services that are bound to this application.
+ * @author ptitzler
+ *
+ */
+public class OnPremServiceBindings {
+
+	/**
+	 * Returns the user-provided services that are defined in VCAP_SERVICES. All property keys are normalized to lower case.
+	 * @return the list of services; guaranteed to be not null
+	 * @throws IOException if VCAP_SERVICES cannot be parsed
+	 */
+	public static JSONArray getUserProvidedServices()
+	 throws IOException {
+
+		String vcap = System.getenv("VCAP_SERVICES");
+		if(vcap == null) {
+			return new JSONArray();
+		}
+
+		JSONObject services = (JSONObject) JSONUtil.normalize(JSON.parse(vcap));
+		if((services == null) || (services.get("user-provided") == null)) {
+			return new JSONArray();
+		}
+		return (JSONArray) services.get("user-provided");
+
+	} // getUserProvidedServices
+
+	/**
+	 * Returns the credentials of a bound user-provided service.
+	 * @param svcName - the service name
+	 * @return the credentials or null if no user-provided service with this name is bound to the application
+	 * @throws IOException if VCAP_SERVICES cannot be parsed
+	 */
+	public static JSONObject getCredentials(String svcName)
+	 throws IOException {
+
+		JSONObject svc = null;
+		for(Object serviceobj : getUserProvidedServices()) {
+			svc = (JSONObject) serviceobj;
+			if((svcName != null) && svcName.equals(svc.get("name"))) {
+				return (JSONObject) svc.get("credentials");
+			}
+		}
+		return null;
+
+	} // getCredentials
+
+	/**
+	 * Returns the data source type of a JDBC URL.
+	 * @param jdbcurl - a JDBC URL, such as jdbc:db2://host:port/database
+	 * @return the URL scheme in lower case, such as db2, or null if the URL is invalid
+	 */
+	public static String getScheme(String jdbcurl) {
+
+		if((jdbcurl == null) || (jdbcurl.length() < 5)) {
+			return null;
+		}
+		try {
+			String scheme = URI.create(jdbcurl.substring(5)).getScheme();
+			return (scheme == null) ? null : scheme.toLowerCase();
+		}
+		catch(IllegalArgumentException iaex) {
+			return null;
+		}
+
+	} // getScheme
+
+	/**
+	 * Identifies the data source instance that a URL refers to. Bulkheads use this information to limit concurrent access per instance.
+	 * @param url - a JDBC URL, such as jdbc:db2://host:port/database, or a URL, such as http://host:port/path
+	 * @return host:port, or the URL itself if it does not contain a host name
+	 */
+	public static String getTarget(String url) {
+
+		if(url == null) {
+			return "";
+		}
+		try {
+			URI uri = URI.create(url.toLowerCase().startsWith("jdbc:") ? url.substring(5) : url);
+			if(uri.getHost() != null) {
+				return uri.getHost().toLowerCase() + ":" + uri.getPort();
+			}
+		}
+		catch(IllegalArgumentException iaex) {
+			// fall through
+		}
+		return url;
+
+	} // getTarget
+
+	/**
+	 * Creates a relational data source for a bound user-provided service.
+	 * @param svcName - the service name
+	 * @return the (unconnected) data source
+	 * @throws OnPremDataSourceAccessTestException if the service is not bound or does not define a valid jdbcUrl property
+	 * @throws OnPremDataSourceNotSupportedException if the data source type is not supported
+	 * @throws OnPremDataSourceAccessTestConfigurationException if the configuration file could not be processed
+	 */
+	public static RelationalOnPremDataSource getRelationalDataSource(String svcName)
+	 throws OnPremDataSourceAccessTestException, OnPremDataSourceNotSupportedException, OnPremDataSourceAccessTestConfigurationException {
+
+		JSONObject credentials = null;
+		try {
+			credentials = getCredentials(svcName);
+		}
+		catch(IOException ioex) {
+			throw new OnPremDataSourceAccessTestException("VCAP_SERVICES could not be processed due to a JSON parsing error.", ioex);
+		}
+
+		if(credentials == null) {
+			throw new OnPremDataSourceAccessTestException("No user-provided service named " + svcName + " is bound to this application.");
+		}
+
+		String jdbcurl = (String) credentials.get("jdbcurl");
+		String scheme = getScheme(jdbcurl);
+		if(scheme == null) {
+			throw new OnPremDataSourceAccessTestException("The user-provided service " + svcName + " does not define the jdbcUrl property or the property value is invalid.");
+		}
+
+		return new RelationalOnPremDataSource(scheme, jdbcurl, (String)credentials.get("user"), (String)credentials.get("password"));
+
+	} // getRelationalDataSource
+
+} // class
@@ -12,21 +12,54 @@
 -------------------------------------------------------------------------------*/
 package com.ibm.cds.labs.onprem;
 
+import java.io.Closeable;
 import java.io.InputStream;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.io.IOException;
 
+import com.ibm.cds.labs.onprem.util.JSONUtil;
 import com.ibm.json.java.JSON;
 import com.ibm.json.java.JSONArray;
 import com.ibm.json.java.JSONObject;
+import com.ibm.json.java.OrderedJSONObject;
 
 /**
  * Implements the connectivity test for relational data sources.
@@ -34,8 +67,21 @@ import com.ibm.json.java.JSONObject;
  *
  */
 public class RelationalOnPremDataSource extends OnPremDataSource {
+
+	// table types that are included in the catalog
+	private static final String[] CATALOG_TABLE_TYPES = {"TABLE", "VIEW"};
+
+	// cached catalogs, keyed by user and JDBC URL
+	private static final Map<String,OnPremDataSourceCatalog> CATALOGS = new ConcurrentHashMap<String,OnPremDataSourceCatalog>();
+
+	// time a sample may exceed its deadline before the watchdog aborts it
+	private static final long SAMPLE_WATCHDOG_GRACE_MILLIS = 1000;
+	private static ScheduledExecutorService SAMPLE_WATCHDOG = null;
 		
 	private DatabaseAccessTestConfig accessTestConfig = null; 
+	private JSONObject discoverySettings = null;
+	private long probeTimeoutSeconds = 60;
+	private String urlScheme = null;
 	private String jdbcURL = null;
 	private String opUser = null;
 	private String opPassword = null;
@@ -60,6 +106,10 @@ public class RelationalOnPremDataSource extends OnPremDataSource {
 			throw new OnPremDataSourceNotSupportedException(scheme);
 		}
 		
+		discoverySettings = OnPremDataSourceAccessTestConfiguration.getSettings("discovery");
+		probeTimeoutSeconds = JSONUtil.getLong(OnPremDataSourceAccessTestConfiguration.getSettings("probes"), "timeout_seconds", 60);
+
+		urlScheme = scheme;
 		jdbcURL = URL;
 		opUser = user;
 		opPassword = password;
@@ -72,11 +122,122 @@ public class RelationalOnPremDataSource extends OnPremDataSource {
 	public void connect() 
 	 throws OnPremDataSourceAccessTestException {
 
+		connection = openConnection();
+
+	} // connect
+
+	/**
+	 * Connect to the relational data source, using additional driver-specific connection properties.
+	 * @param properties - the connection properties; may be null
+	 * @throws OnPremResourceAccessTestException if a problem was encountered
+	 */
+	public void connect(Properties properties) 
+	 throws OnPremDataSourceAccessTestException {
+
+		connection = openConnection(properties);
+
+	} // connect
+
+	/**
+	 * @return the connector configuration of this data source
+	 */
+	protected DatabaseAccessTestConfig getAccessTestConfig() {
+		return accessTestConfig;
+	}
+
+	/**
+	 * @return the connector's timeout properties, such as loginTimeout, derived from probes.timeout_seconds; refer to DatabaseAccessTestConfig.getTimeoutProperties
+	 */
+	protected Properties getTimeoutProperties() {
+		return accessTestConfig.getTimeoutProperties(probeTimeoutSeconds);
+	}
+
+	/**
+	 * Establish a new connection to the relational data source.
+	 * @return the connection
+	 * @throws OnPremResourceAccessTestException if a problem was encountered
+	 */
+	private Connection openConnection() 
+	 throws OnPremDataSourceAccessTestException {
+		return openConnection(null);
+	} // openConnection
+
+	/**
+	 * Establish a new connection to the relational data source, using additional driver-specific connection properties.
+	 * Note that some drivers give precedence to properties that are specified in the JDBC URL. Each connection requires a 
+	 * bulkhead permit, which is returned when the connection is closed.
+	 * @param properties - the connection properties; may be null
+	 * @return the connection
+	 * @throws OnPremDataSourceThrottledException if a concurrency limit for the data source was reached
+	 * @throws OnPremResourceAccessTestException if a problem was encountered
+	 */
+	private Connection openConnection(Properties properties) 
+	 throws OnPremDataSourceAccessTestException {
+		return openConnection(properties, OnPremDataSourceBulkheads.acquireBlocking(urlScheme, OnPremServiceBindings.getTarget(jdbcURL)));
+	} // openConnection
+
+	/**
+	 * Establish an additional connection to the relational data source if a bulkhead permit is available immediately.
+	 * @param properties - the connection properties; may be null
+	 * @return the connection, or null if a concurrency limit for the data source was reached
+	 * @throws OnPremResourceAccessTestException if a problem was encountered
+	 */
+	private Connection tryOpenConnection(Properties properties) 
+	 throws OnPremDataSourceAccessTestException {
+		String target = OnPremServiceBindings.getTarget(jdbcURL);
+		OnPremDataSourceBulkheads.Permit permit = null;
+		try {
+			permit = OnPremDataSourceBulkheads.tryAcquire(urlScheme, target);
+		}
+		catch(OnPremDataSourceAccessTestConfigurationException opdsatce) {
+			throw new OnPremDataSourceAccessTestException("Failed to obtain a connection slot for " + target + ".", opdsatce);
+		}
+		return (permit == null) ? null : openConnection(properties, permit);
+	} // tryOpenConnection
+
+	/*
+	 * Establish a new connection, using a permit that was already granted. The permit is returned when the connection is closed
+	 * or if the connection cannot be established.
+	 */
+	private Connection openConnection(Properties properties, final OnPremDataSourceBulkheads.Permit permit) 
+	 throws OnPremDataSourceAccessTestException {
+
+		boolean connected = false;
+
 		try {
 			// load the JDBC driver
-			Class.forName(accessTestConfig.getJDBCDriverClassName());			
+			Class.forName(accessTestConfig.getJDBCDriverClassName());
+			Properties info = new Properties();
+			if(properties != null) {
+				info.putAll(properties);
+			}
+			if(opUser != null) {
+				info.setProperty("user", opUser);
+			}
+			if(opPassword != null) {
+				info.setProperty("password", opPassword);
+			}
 			// try to establish a connection
-			connection = DriverManager.getConnection(jdbcURL,opUser,opPassword);
+			final Connection c = DriverManager.getConnection(jdbcURL,info);
+			connected = true;
+
+			// return the permit when the connection is closed
+			return (Connection) Proxy.newProxyInstance(RelationalOnPremDataSource.class.getClassLoader(), new Class<?>[] {Connection.class}, new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					try {
+						return method.invoke(c, args);
+					}
+					catch(InvocationTargetException itex) {
+						throw itex.getCause();
+					}
+					finally {
+						if("close".equals(method.getName()) && (method.getParameterTypes().length == 0)) {
+							// the physical connection is closed (or failed to close); the next waiter may connect
+							permit.release();
+						}
+					}
+				}
+			});
 		}
 		catch(ClassNotFoundException cnfex) {
 			throw new OnPremDataSourceAccessTestException("Unable to load the JDBC driver " + accessTestConfig.getJDBCDriverClassName() + " for on-premises "+ accessTestConfig.getURLDisplayName() + " database.",cnfex);
@@ -88,8 +249,13 @@ public class RelationalOnPremDataSource extends OnPremDataSource {
 		catch(Exception ex) {
 			throw new OnPremDataSourceAccessTestException("Failed to connect to on-premises "+ accessTestConfig.getURLDisplayName() + " database.",ex);
 		}
+		finally {
+			if(! connected) {
+				permit.release();
+			}
+		}
 
-	} // connect
+	} // openConnection
 
     /**
      * Disconnect from the relational data source. Note that no error is raised if a problem was encountered.
@@ -161,4 +327,789 @@ public class RelationalOnPremDataSource extends OnPremDataSource {
 
 	} // runQuery
 
+	/**
+	 * Discover the schemas, tables and columns that are visible through the data source. The catalog is cached for all
+	 * instances that access the same database using the same user id. If cached information is missing or has expired, 
+	 * the affected schemas are crawled in parallel, using up to discovery.connections connections. An existing connection is
+	 * reused; a connection is not required if the request can be answered from the cache. Requests that can be answered from
+	 * the cache do not wait for a refresh that is in progress. Connections that are opened for the crawl use the connector's
+	 * timeout properties, so that an unresponsive data source does not hold the refresh lock indefinitely.
+	 * @param schemas - the schemas to be loaded; null selects all schemas
+	 * @param refresh - if true, cached information is discarded
+	 * @return the catalog
+	 * @throws OnPremResourceAccessTestException, if a problem was encountered
+	 */
+	public OnPremDataSourceCatalog discover(Collection<String> schemas, boolean refresh) 
+		throws OnPremDataSourceAccessTestException {
+
+		OnPremDataSourceCatalog catalog = getCatalog();
+
+		if((! refresh) && isFresh(catalog, schemas)) {
+			// the request can be answered from the cache
+			return catalog;
+		}
+
+		synchronized(catalog.getRefreshLock()) {
+
+			if(refresh) {
+				catalog.invalidate();
+			}
+			else if(isFresh(catalog, schemas)) {
+				// another request refreshed the catalog while this one was waiting
+				return catalog;
+			}
+
+			long now = System.currentTimeMillis();
+			Connection primary = connection;
+			if(primary == null) {
+				primary = openConnection(getTimeoutProperties());
+			}
+
+			try {
+				DatabaseMetaData metadata = primary.getMetaData();
+				// some drivers, such as MySQL Connector/J, expose databases as catalogs instead of schemas
+				boolean useCatalogs = (! metadata.supportsSchemasInTableDefinitions()) && metadata.supportsCatalogsInTableDefinitions();
+
+				if(catalog.isSchemaListStale(now)) {
+					// one round trip; cached entries for existing schemas are retained
+					catalog.setSchemaList(listSchemas(metadata, useCatalogs), now);
+				}
+
+				// crawl schemas that have not been loaded yet or have expired
+				crawl(catalog.getStaleSchemas(schemas, now), catalog, primary, useCatalogs);
+			}
+			catch(SQLException sqlex) {
+				throw new OnPremDataSourceAccessTestException("Failed to retrieve the list of schemas from on-premises " + accessTestConfig.getURLDisplayName() + " database.",sqlex);
+			}
+			finally {
+				if(primary != connection) {
+					closeQuietly(primary);
+				}
+			}
+		}
+
+		return catalog;
+
+	} // discover
+
+	/*
+	 * Returns the (possibly empty) cached catalog that is shared by all instances that access the same database using the same user id
+	 */
+	private OnPremDataSourceCatalog getCatalog() {
+		String key = opUser + "@" + jdbcURL;
+		OnPremDataSourceCatalog catalog = CATALOGS.get(key);
+		if(catalog == null) {
+			CATALOGS.putIfAbsent(key, new OnPremDataSourceCatalog(JSONUtil.getLong(discoverySettings, "ttl_seconds", 600) * 1000));
+			catalog = CATALOGS.get(key);
+		}
+		return catalog;
+	} // getCatalog
+
+	private static boolean isFresh(OnPremDataSourceCatalog catalog, Collection<String> schemas) {
+		long now = System.currentTimeMillis();
+		return (! catalog.isSchemaListStale(now)) && catalog.getStaleSchemas(schemas, now).isEmpty();
+	} // isFresh
+
+	/**
+	 * Streams a bounded, read-only sample of a table as newline-delimited JSON (one object per row). The table must be
+	 * visible in the catalog, which guards against SQL injection. If the cached catalog does not contain current information
+	 * about the schema, the table is looked up using a single metadata query instead of a crawl. Rows are fetched using a server-side cursor, as configured
+	 * by the connector's sample settings, and are written one at a time: if the client reads slowly, writes block and no
+	 * further rows are fetched, which keeps memory usage flat regardless of the number of rows. If a write is still blocked
+	 * shortly after the deadline, a watchdog cancels the query, closes the stream and closes the database connection,
+	 * so that a stalled client cannot hold the connection, transaction and bulkhead permit indefinitely. The watchdog is armed
+	 * before the table is looked up, so the deadline also applies to the metadata query.
+	 * @param schema - the schema (or, for MySQL, database) name
+	 * @param table - the table or view name
+	 * @param maxRows - the maximum number of rows to be returned
+	 * @param timeoutMillis - the maximum amount of time to spend, including the time spent waiting for the client
+	 * @param out - the destination
+	 * @param stream - the stream underlying out; closed by the watchdog to abort a blocked write
+	 * @return {"rows":NUMBER,"elapsed_ms":NUMBER,"limit":"rows|time|none"}
+	 * @throws OnPremResourceAccessTestException if a problem was encountered before the first row was written
+	 * @throws IOException if the client disconnected
+	 */
+	public JSONObject sample(String schema, String table, int maxRows, long timeoutMillis, Writer out, final Closeable stream) 
+		throws OnPremDataSourceAccessTestException, IOException {
+
+		if(connection == null)	{
+			throw new OnPremDataSourceAccessTestException("Cannot sample table because no database connection exists.");
+		}
+
+		long start = System.currentTimeMillis();
+		long deadline = start + timeoutMillis;
+
+		JSONObject summary = new JSONObject();
+		String limit = "none";
+		long rowcount = 0;
+		Statement statement = null;
+		ResultSet resultset = null;
+		boolean autocommit = true;
+		boolean autocommitChanged = false;
+		// set by whichever finishes first: this thread or the watchdog
+		final AtomicBoolean finished = new AtomicBoolean(false);
+		final AtomicBoolean aborted = new AtomicBoolean(false);
+		// the statement to be cancelled by the watchdog, once it exists
+		final AtomicReference<Statement> running = new AtomicReference<Statement>();
+		final Connection owned = connection;
+		ScheduledFuture<?> watchdog = getSampleWatchdog().schedule(new Runnable() {
+			public void run() {
+				if(finished.compareAndSet(false, true)) {
+					aborted.set(true);
+					try {
+						if(running.get() != null) {
+							running.get().cancel();
+						}
+					}
+					catch(Exception ex) {
+						// ignore
+					}
+					closeQuietly(stream);
+					// releases the bulkhead permit
+					closeQuietly(owned);
+				}
+			}
+		}, timeoutMillis + SAMPLE_WATCHDOG_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+
+		try {
+			String[] names = getCatalog().resolveTable(schema, table);
+			if((names == null) || (! isFresh(getCatalog(), Collections.singletonList(schema)))) {
+				// bounded lookup; does not wait for or trigger a crawl
+				names = lookupTable(schema, table);
+			}
+			if(names == null) {
+				throw new OnPremDataSourceAccessTestException("Table " + schema + "." + table + " does not exist in on-premises " + accessTestConfig.getURLDisplayName() + " database.");
+			}
+
+			String quote = connection.getMetaData().getIdentifierQuoteString();
+			if((quote == null) || (quote.trim().length() == 0)) {
+				quote = "";
+			}
+			String sql = "SELECT * FROM " + quote + names[0] + quote + "." + quote + names[1] + quote;
+
+			// cursor-based fetching; PgJDBC requires a transaction and MySQL a forward-only, read-only statement
+			autocommit = connection.getAutoCommit();
+			connection.setAutoCommit(accessTestConfig.getSampleAutoCommit());
+			autocommitChanged = true;
+			statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			running.set(statement);
+			// the row limit is enforced by the server
+			statement.setMaxRows(maxRows);
+			// the time spent on the lookup counts against the deadline
+			statement.setQueryTimeout((int) Math.max(1, (deadline - System.currentTimeMillis() + 999) / 1000));
+			if(accessTestConfig.getSampleFetchSize() != 0) {
+				statement.setFetchSize(accessTestConfig.getSampleFetchSize());
+			}
+
+			resultset = statement.executeQuery(sql);
+			ResultSetMetaData rsmd = resultset.getMetaData();
+			int columncount = rsmd.getColumnCount();
+			OrderedJSONObject row = null;
+
+			while(true) {
+				if(System.currentTimeMillis() >= deadline) {
+					limit = "time";
+					break;
+				}
+				if(rowcount >= maxRows) {
+					limit = "rows";
+					break;
+				}
+				if(! resultset.next()) {
+					break;
+				}
+				row = new OrderedJSONObject();
+				for(int i = 1; i <= columncount; i++) {
+					row.put(rsmd.getColumnLabel(i), getSampleValue(resultset, rsmd, i));
+				}
+				// blocks if the client is not keeping up
+				out.write(row.toString());
+				out.write('\n');
+				rowcount++;
+			}
+		}
+		catch(SQLException sqlex) {
+			if(aborted.get()) {
+				// the watchdog cancelled the query
+				limit = "time";
+			}
+			else if(rowcount == 0) {
+				throw new OnPremDataSourceAccessTestException("Failed to sample table " + schema + "." + table + " in on-premises " + accessTestConfig.getURLDisplayName() + " database.",sqlex);
+			}
+			// rows were already sent; report the problem in the summary 
+			summary.put("error", sqlex.getMessage());
+		}
+		finally {
+			watchdog.cancel(false);
+			if(! finished.compareAndSet(false, true)) {
+				// the watchdog aborted the sample; the connection is closed
+				limit = "time";
+			}
+			else if((statement != null) && "time".equals(limit)) {
+				// stop the query; streaming drivers would otherwise read the remaining rows on close.
+				// If the row limit was reached, setMaxRows already capped the result and cancelling is not needed.
+				try {
+					statement.cancel();
+				}
+				catch(Exception ex) {
+					// ignore
+				}
+			}
+			try {
+				if(resultset != null) {
+					resultset.close();
+				}
+				if(statement != null) {
+					statement.close();
+				}
+				if(autocommitChanged) {
+					if(! connection.getAutoCommit()) {
+						// nothing was changed
+						connection.rollback();
+					}
+					connection.setAutoCommit(autocommit);
+				}
+			}
+			catch(SQLException sqlex) {
+				// ignore
+			}
+		}
+
+		summary.put("rows", rowcount);
+		summary.put("elapsed_ms", System.currentTimeMillis() - start);
+		summary.put("limit", limit);
+		return summary;
+
+	} // sample
+
+	private static synchronized ScheduledExecutorService getSampleWatchdog() {
+		if(SAMPLE_WATCHDOG == null) {
+			SAMPLE_WATCHDOG = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "onprem-sample-watchdog");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return SAMPLE_WATCHDOG;
+	} // getSampleWatchdog
+
+	/*
+	 * Converts a column value to a type that can be serialized as JSON.
+	 */
+	private static Object getSampleValue(ResultSet resultset, ResultSetMetaData rsmd, int column) 
+		throws SQLException {
+
+		switch(rsmd.getColumnType(column)) {
+			case Types.BINARY:
+			case Types.VARBINARY:
+			case Types.LONGVARBINARY:
+			case Types.BLOB:
+				// binary content is not included in the sample
+				return (resultset.getObject(column) == null) ? null : "(binary)";
+			case Types.BIT:
+			case Types.BOOLEAN:
+				boolean b = resultset.getBoolean(column);
+				return resultset.wasNull() ? null : Boolean.valueOf(b);
+			case Types.TINYINT:
+			case Types.SMALLINT:
+			case Types.INTEGER:
+			case Types.BIGINT:
+				long l = resultset.getLong(column);
+				return resultset.wasNull() ? null : Long.valueOf(l);
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				double d = resultset.getDouble(column);
+				return resultset.wasNull() ? null : Double.valueOf(d);
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+				// BigDecimal is serialized without loss of precision
+				return resultset.getBigDecimal(column);
+			default:
+				return resultset.getString(column);
+		}
+
+	} // getSampleValue
+
+	/**
+	 * Measures the performance of the link to the data source for a set of connection properties: the time it takes to 
+	 * connect, the round-trip latency of the test query (prepared and executed once per iteration, which allows statement 
+	 * caches to take effect) and the throughput of the connector's bulk query. Medians are reported to reduce the impact of outliers.
+	 * The connect time does not include the time spent waiting for a bulkhead permit.
+	 * @param properties - driver-specific connection properties
+	 * @param connects - the number of connections to establish
+	 * @param iterations - the number of test query executions
+	 * @param bulkRuns - the number of bulk query executions
+	 * @param measurements - populated with {"connect_ms":NUMBER,"latency_ms":NUMBER,"latency_min_ms":NUMBER,"bulk_rows":NUMBER,"bulk_ms":NUMBER,"rows_per_sec":NUMBER}.
+	 *         The bulk properties are not set if no bulk query is configured for the connector.
+	 * @throws OnPremResourceAccessTestException if a problem was encountered
+	 */
+	public void benchmark(Properties properties, int connects, int iterations, int bulkRuns, JSONObject measurements) 
+		throws OnPremDataSourceAccessTestException {
+
+		double[] connectTimes = new double[Math.max(1, connects)];
+		double[] latencies = new double[Math.max(1, iterations)];
+		Connection c = null;
+		long start = 0;
+
+		try {
+			OnPremDataSourceBulkheads.Permit permit = null;
+			for(int i = 0; i < connectTimes.length; i++) {
+				closeQuietly(c);
+				// time spent waiting for a bulkhead permit is not part of the connect time
+				permit = OnPremDataSourceBulkheads.acquireBlocking(urlScheme, OnPremServiceBindings.getTarget(jdbcURL));
+				start = System.nanoTime();
+				c = openConnection(properties, permit);
+				connectTimes[i] = elapsedMillis(start);
+			}
+
+			PreparedStatement statement = null;
+			ResultSet resultset = null;
+			for(int i = 0; i < latencies.length; i++) {
+				start = System.nanoTime();
+				statement = c.prepareStatement(accessTestConfig.getTestQuery());
+				resultset = statement.executeQuery();
+				resultset.next();
+				resultset.getString(1);
+				resultset.close();
+				statement.close();
+				latencies[i] = elapsedMillis(start);
+			}
+
+			measurements.put("connect_ms", median(connectTimes));
+			measurements.put("latency_ms", median(latencies));
+			Arrays.sort(latencies);
+			measurements.put("latency_min_ms", latencies[0]);
+
+			if(accessTestConfig.getTuningBulkQuery() != null) {
+				long rows = 0;
+				double[] bulkTimes = new double[Math.max(1, bulkRuns)];
+				for(int run = 0; run < bulkTimes.length; run++) {
+					rows = 0;
+					Statement bulk = c.createStatement();
+					start = System.nanoTime();
+					resultset = bulk.executeQuery(accessTestConfig.getTuningBulkQuery());
+					int columncount = resultset.getMetaData().getColumnCount();
+					while(resultset.next()) {
+						// materialize every value
+						for(int i = 1; i <= columncount; i++) {
+							resultset.getString(i);
+						}
+						rows++;
+					}
+					bulkTimes[run] = elapsedMillis(start);
+					resultset.close();
+					bulk.close();
+				}
+				double bulkMillis = median(bulkTimes);
+				measurements.put("bulk_rows", rows);
+				measurements.put("bulk_ms", bulkMillis);
+				measurements.put("rows_per_sec", (bulkMillis > 0) ? Math.round(rows * 1000 / bulkMillis) : rows);
+			}
+		}
+		catch(SQLException sqlex) {
+			throw new OnPremDataSourceAccessTestException("Failed to run the benchmark on on-premises " + accessTestConfig.getURLDisplayName() + " database.",sqlex);
+		}
+		finally {
+			closeQuietly(c);
+		}
+
+	} // benchmark
+
+	/**
+	 * Measures write throughput: creates a session-scoped table using the connector's write_benchmark DDL, inserts the
+	 * specified number of rows once for each batch size (using JDBC batching and one commit per batch), and drops the table.
+	 * The table is emptied between runs; this is not included in the measurements. Small batch sizes require one round trip
+	 * per batch, so at most maxBatches batches are inserted per batch size. No further batches are started after the deadline;
+	 * batch sizes that were not measured are reported as skipped.
+	 * @param properties - driver-specific connection properties, such as batch-rewrite options
+	 * @param rows - the number of rows to insert per run
+	 * @param batchSizes - the batch sizes to measure
+	 * @param maxBatches - the maximum number of batches per batch size
+	 * @param deadline - the time (in milliseconds since the epoch) after which no further batches are started
+	 * @return [{"batch_size":NUMBER,"rows":NUMBER,"elapsed_ms":NUMBER,"rows_per_sec":NUMBER,"execute_ms":NUMBER,"commit_ms":NUMBER,"commit_max_ms":NUMBER,"limit":"rows|time|none"},...];
+	 *         execute_ms and commit_ms are medians per batch. A limit of rows indicates that fewer rows were inserted because of maxBatches.
+	 *         Skipped batch sizes are reported as {"batch_size":NUMBER,"skipped":"true"}.
+	 * @throws OnPremResourceAccessTestException if a problem was encountered
+	 */
+	public JSONArray benchmarkWrites(Properties properties, int rows, List<Integer> batchSizes, int maxBatches, long deadline) 
+		throws OnPremDataSourceAccessTestException {
+
+		JSONObject options = accessTestConfig.getWriteBenchmarkOptions();
+		if((options.get("create") == null) || (options.get("insert") == null) || (options.get("drop") == null)) {
+			throw new OnPremDataSourceAccessTestException("No write benchmark is configured for " + accessTestConfig.getURLDisplayName() + " data sources.");
+		}
+
+		// unique name; temporary tables are session-scoped, but regular tables might be configured
+		String table = "onprem_wb_" + Integer.toHexString(new Random().nextInt() & 0x7fffffff);
+		String clear = (options.get("clear") == null) ? "DELETE FROM {table}" : (String) options.get("clear");
+
+		JSONArray results = new JSONArray();
+		Connection c = null;
+		Statement ddl = null;
+		boolean created = false;
+		String stage = "create the benchmark table in";
+
+		try {
+			c = openConnection(properties);
+			ddl = c.createStatement();
+			ddl.execute(((String) options.get("create")).replace("{table}", table));
+			created = true;
+			c.setAutoCommit(false);
+
+			for(Integer batchSize : batchSizes) {
+				if(System.currentTimeMillis() >= deadline) {
+					JSONObject skipped = new JSONObject();
+					skipped.put("batch_size", batchSize);
+					skipped.put("skipped", "true");
+					results.add(skipped);
+					continue;
+				}
+				stage = "insert rows into";
+				results.add(insertRows(c, ((String) options.get("insert")).replace("{table}", table), rows, Math.max(1, batchSize), maxBatches, deadline));
+				stage = "empty the benchmark table in";
+				ddl.executeUpdate(clear.replace("{table}", table));
+				c.commit();
+			}
+		}
+		catch(SQLException sqlex) {
+			throw new OnPremDataSourceAccessTestException("Failed to " + stage + " on-premises " + accessTestConfig.getURLDisplayName() + " database.",sqlex);
+		}
+		finally {
+			if(created) {
+				try {
+					c.rollback();
+					c.setAutoCommit(true);
+					ddl.execute(((String) options.get("drop")).replace("{table}", table));
+				}
+				catch(SQLException sqlex) {
+					// the table is dropped when the session ends if it is a temporary table
+					System.err.println("Failed to drop write benchmark table " + table + ": " + sqlex.getMessage());
+				}
+			}
+			closeQuietly(c);
+		}
+
+		return results;
+
+	} // benchmarkWrites
+
+	/*
+	 * Inserts rows in batches, committing each batch. The insert statement must have two parameters: an INTEGER
+	 * (the row number) and a VARCHAR of at least 64 characters.
+	 */
+	private static JSONObject insertRows(Connection c, String sql, int rows, int batchSize, int maxBatches, long deadline) 
+		throws SQLException {
+
+		String limit = "none";
+		if((long) maxBatches * batchSize < rows) {
+			// one round trip per batch; cap the number of round trips
+			rows = Math.max(1, maxBatches) * batchSize;
+			limit = "rows";
+		}
+		int batches = (rows + batchSize - 1) / batchSize;
+		double[] executeTimes = new double[Math.max(1, batches)];
+		double[] commitTimes = new double[Math.max(1, batches)];
+		int batch = 0;
+		int inserted = rows;
+		long startRun = System.nanoTime();
+		long start = 0;
+
+		PreparedStatement insert = c.prepareStatement(sql);
+		try {
+			insert.setQueryTimeout((int) Math.max(1, (deadline - System.currentTimeMillis() + 999) / 1000));
+			for(int i = 0; i < rows; i++) {
+				if((i % batchSize == 0) && (i > 0) && (System.currentTimeMillis() >= deadline)) {
+					// do not start another batch
+					inserted = i;
+					limit = "time";
+					break;
+				}
+				insert.setInt(1, i);
+				insert.setString(2, String.format("%064d", i));
+				insert.addBatch();
+				if(((i + 1) % batchSize == 0) || (i == rows - 1)) {
+					start = System.nanoTime();
+					insert.executeBatch();
+					executeTimes[batch] = elapsedMillis(start);
+					start = System.nanoTime();
+					c.commit();
+					commitTimes[batch] = elapsedMillis(start);
+					batch++;
+				}
+			}
+		}
+		finally {
+			insert.close();
+		}
+
+		double elapsed = elapsedMillis(startRun);
+		// only batches that were executed are included
+		executeTimes = Arrays.copyOf(executeTimes, Math.max(1, batch));
+		commitTimes = Arrays.copyOf(commitTimes, Math.max(1, batch));
+		JSONObject result = new JSONObject();
+		result.put("batch_size", batchSize);
+		result.put("rows", inserted);
+		result.put("elapsed_ms", elapsed);
+		result.put("rows_per_sec", (elapsed > 0) ? Math.round(inserted * 1000 / elapsed) : inserted);
+		result.put("execute_ms", median(executeTimes));
+		result.put("commit_ms", median(commitTimes));
+		double[] sorted = commitTimes.clone();
+		Arrays.sort(sorted);
+		result.put("commit_max_ms", sorted[sorted.length - 1]);
+		result.put("limit", limit);
+		return result;
+
+	} // insertRows
+
+	private static double elapsedMillis(long startNanos) {
+		// round to 0.1 ms
+		return Math.round((System.nanoTime() - startNanos) / 100000.0) / 10.0;
+	} // elapsedMillis
+
+	private static double median(double[] values) {
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int mid = sorted.length / 2;
+		return (sorted.length % 2 == 1) ? sorted[mid] : Math.round((sorted[mid - 1] + sorted[mid]) * 5) / 10.0;
+	} // median
+
+	/**
+	 * Returns the names of all schemas (or catalogs) that are not excluded by the connector's discovery configuration.
+	 */
+	private List<String> listSchemas(DatabaseMetaData metadata, boolean useCatalogs) 
+		throws SQLException {
+
+		List<String> excluded = accessTestConfig.getDiscoveryExcludedSchemas();
+		List<String> names = new ArrayList<String>();
+		ResultSet resultset = useCatalogs ? metadata.getCatalogs() : metadata.getSchemas();
+		try {
+			String name = null;
+			while(resultset.next()) {
+				name = resultset.getString(useCatalogs ? "TABLE_CAT" : "TABLE_SCHEM");
+				if((name != null) && (! containsIgnoreCase(excluded, name))) {
+					names.add(name.trim());
+				}
+			}
+		}
+		finally {
+			resultset.close();
+		}
+		return names;
+
+	} // listSchemas
+
+	/**
+	 * Crawls the specified schemas in parallel and stores the results in the catalog. Each worker uses its own connection,
+	 * which is taken from a pool that is seeded with the primary connection. Additional connections are opened on demand,
+	 * but only if the bulkheads grant a permit immediately; otherwise the worker waits for an idle pooled connection, so the
+	 * crawl never waits for permits that are held by its own connections. Opened connections are closed when the crawl completes.
+	 * Schemas that were loaded successfully are retained even if others fail.
+	 * @throws OnPremResourceAccessTestException if one or more schemas could not be loaded
+	 */
+	private void crawl(List<String> schemas, OnPremDataSourceCatalog catalog, Connection primary, final boolean useCatalogs) 
+		throws OnPremDataSourceAccessTestException {
+
+		if(schemas.isEmpty()) {
+			return;
+		}
+
+		int poolsize = Math.max(1, Math.min(JSONUtil.getInt(discoverySettings, "connections", 4), schemas.size()));
+
+		// idle connections
+		final BlockingQueue<Connection> pool = new LinkedBlockingQueue<Connection>();
+		pool.add(primary);
+		// connections that were opened by the crawler
+		final List<Connection> opened = Collections.synchronizedList(new ArrayList<Connection>());
+		// number of additional connections that may still be opened
+		final AtomicInteger extra = new AtomicInteger(poolsize - 1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(poolsize);
+		List<Future<Map<String,List<String>>>> results = new ArrayList<Future<Map<String,List<String>>>>();
+		List<String> failed = new ArrayList<String>();
+		Throwable cause = null;
+
+		try {
+			for(final String schema : schemas) {
+				results.add(executor.submit(new Callable<Map<String,List<String>>>() {
+					public Map<String,List<String>> call() throws Exception {
+						// at most poolsize tasks run concurrently, each holding one connection
+						Connection c = pool.poll();
+						if((c == null) && (extra.getAndDecrement() > 0)) {
+							try {
+								c = tryOpenConnection(getTimeoutProperties());
+								if(c != null) {
+									opened.add(c);
+								}
+							}
+							catch(OnPremDataSourceAccessTestException opex) {
+								// continue with the pooled connections
+							}
+						}
+						if(c == null) {
+							// the primary connection is always returned to the pool
+							c = pool.take();
+						}
+						try {
+							return crawlSchema(c.getMetaData(), schema, useCatalogs);
+						}
+						finally {
+							pool.offer(c);
+						}
+					}
+				}));
+			}
+
+			for(int i = 0; i < schemas.size(); i++) {
+				try {
+					catalog.putSchema(schemas.get(i), results.get(i).get(), System.currentTimeMillis());
+				}
+				catch(ExecutionException eex) {
+					failed.add(schemas.get(i));
+					if(cause == null) {
+						cause = eex.getCause();
+					}
+				}
+			}
+		}
+		catch(InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new OnPremDataSourceAccessTestException("Metadata discovery for on-premises " + accessTestConfig.getURLDisplayName() + " database was interrupted.",iex);
+		}
+		finally {
+			executor.shutdownNow();
+			synchronized(opened) {
+				for(Connection c : opened) {
+					closeQuietly(c);
+				}
+			}
+		}
+
+		if(! failed.isEmpty()) {
+			throw new OnPremDataSourceAccessTestException("Failed to load " + failed.size() + " of " + schemas.size() + " schemas " + failed + " from on-premises " + accessTestConfig.getURLDisplayName() + " database.",cause);
+		}
+
+	} // crawl
+
+	/**
+	 * Loads the tables and columns of a single schema (or catalog), using two metadata round trips.
+	 * @return table name -> column names (in ordinal order)
+	 */
+	private Map<String,List<String>> crawlSchema(DatabaseMetaData metadata, String schema, boolean useCatalogs) 
+		throws SQLException {
+
+		Map<String,List<String>> tables = new TreeMap<String,List<String>>(String.CASE_INSENSITIVE_ORDER);
+		// schema names are patterns; escape wildcard characters
+		String catalogName = useCatalogs ? schema : null;
+		String schemaPattern = useCatalogs ? null : escapePattern(schema, metadata.getSearchStringEscape());
+
+		ResultSet resultset = metadata.getTables(catalogName, schemaPattern, "%", CATALOG_TABLE_TYPES);
+		try {
+			while(resultset.next()) {
+				tables.put(resultset.getString("TABLE_NAME"), new ArrayList<String>());
+			}
+		}
+		finally {
+			resultset.close();
+		}
+
+		// columns are returned ordered by table name and ordinal position
+		resultset = metadata.getColumns(catalogName, schemaPattern, "%", "%");
+		try {
+			List<String> columns = null;
+			while(resultset.next()) {
+				columns = tables.get(resultset.getString("TABLE_NAME"));
+				if(columns != null) {
+					columns.add(resultset.getString("COLUMN_NAME"));
+				}
+			}
+		}
+		finally {
+			resultset.close();
+		}
+
+		return tables;
+
+	} // crawlSchema
+
+	/**
+	 * Looks up a single table or view using one metadata query per spelling of its name (as specified, upper case
+	 * and lower case), without crawling the schema.
+	 * @return a two-element array {schema, table}, using the stored spelling of both names, or null if the table does not exist
+	 */
+	private String[] lookupTable(String schema, String table) 
+		throws SQLException {
+
+		DatabaseMetaData metadata = connection.getMetaData();
+		boolean useCatalogs = (! metadata.supportsSchemasInTableDefinitions()) && metadata.supportsCatalogsInTableDefinitions();
+		String escape = metadata.getSearchStringEscape();
+
+		String[][] spellings = {{schema, table},
+				                {schema.toUpperCase(), table.toUpperCase()},
+				                {schema.toLowerCase(), table.toLowerCase()}};
+
+		ResultSet resultset = null;
+		String s = null;
+		String t = null;
+		for(int i = 0; i < spellings.length; i++) {
+			s = spellings[i][0];
+			t = spellings[i][1];
+			if((i > 0) && s.equals(spellings[0][0]) && t.equals(spellings[0][1])) {
+				// already looked up
+				continue;
+			}
+			if(useCatalogs) {
+				// catalog names are not patterns
+				resultset = metadata.getTables(s, null, escapePattern(t, escape), CATALOG_TABLE_TYPES);
+			}
+			else {
+				resultset = metadata.getTables(null, escapePattern(s, escape), escapePattern(t, escape), CATALOG_TABLE_TYPES);
+			}
+			try {
+				while(resultset.next()) {
+					String storedSchema = resultset.getString(useCatalogs ? "TABLE_CAT" : "TABLE_SCHEM");
+					String storedTable = resultset.getString("TABLE_NAME");
+					if(schema.equalsIgnoreCase(storedSchema) && table.equalsIgnoreCase(storedTable)) {
+						return new String[] {storedSchema, storedTable};
+					}
+				}
+			}
+			finally {
+				resultset.close();
+			}
+		}
+		return null;
+
+	} // lookupTable
+
+	private static String escapePattern(String name, String escape) {
+		if((escape == null) || (escape.length() == 0)) {
+			return name;
+		}
+		return name.replace(escape, escape + escape).replace("_", escape + "_").replace("%", escape + "%");
+	} // escapePattern
+
+	private static boolean containsIgnoreCase(List<String> list, String value) {
+		for(String item : list) {
+			if(item.equalsIgnoreCase(value.trim())) {
+				return true;
+			}
+		}
+		return false;
+	} // containsIgnoreCase
+
+	private static void closeQuietly(AutoCloseable c) {
+		if(c == null) {
+			return;
+		}
+		try {
+			c.close();
+		}
+		catch(Exception ex) {
+			// ignore
+		}
+	} // closeQuietly
+
 } // RelationalOnPremResource
\ No newline at end of file
@@ -0,0 +1,141 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.ibm.cds.labs.onprem.util.JSONUtil;
+import com.ibm.json.java.JSONObject;
+
+/**
+ * Adapts the blocking RelationalOnPremDataSource to the asynchronous probe interface. JDBC calls block, so each test
+ * runs on a dedicated, bounded thread pool (probes.blocking_threads); the caller's thread is never blocked. At most
+ * probes.max_queue tests wait for a thread; further tests are throttled. Connections are opened with the connector's
+ * timeout_properties, derived from probes.timeout_seconds, so that an unresponsive data source does not occupy a thread indefinitely.
+ * @author ptitzler
+ *
+ */
+public class RelationalOnPremDataSourceProbe implements OnPremDataSourceProbe {
+
+	private static ExecutorService EXECUTOR = null;
+
+	private static synchronized ExecutorService getExecutor()
+	 throws OnPremDataSourceAccessTestConfigurationException {
+
+		if(EXECUTOR == null) {
+			JSONObject settings = OnPremDataSourceAccessTestConfiguration.getSettings("probes");
+			int threads = Math.max(1, JSONUtil.getInt(settings, "blocking_threads", 8));
+			// bounded queue; rejected tests are reported as throttled
+			EXECUTOR = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+					                          new ArrayBlockingQueue<Runnable>(Math.max(1, JSONUtil.getInt(settings, "max_queue", 32))),
+					                          new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "onprem-jdbc-probe");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return EXECUTOR;
+
+	} // getExecutor
+
+	/**
+	 * Relational data sources are supported if a connector is defined for the JDBC URL scheme in rdbms_config.json.
+	 */
+	public boolean supports(String scheme)
+	 throws OnPremDataSourceAccessTestConfigurationException {
+		return OnPremDataSourceAccessTestConfiguration.getDataSourceAccessConfig(scheme) != null;
+	} // supports
+
+	public Collection<String> getSupportedTypes()
+	 throws OnPremDataSourceAccessTestConfigurationException {
+		return OnPremDataSourceAccessTestConfiguration.getSupportedDataSources();
+	} // getSupportedTypes
+
+	public CompletionStage<OnPremDataSourceProbeResult> probe(final String scheme, final String url, final JSONObject credentials) {
+
+		try {
+			final long timeoutSeconds = JSONUtil.getLong(OnPremDataSourceAccessTestConfiguration.getSettings("probes"), "timeout_seconds", 60);
+			return CompletableFuture.supplyAsync(new Supplier<OnPremDataSourceProbeResult>() {
+				public OnPremDataSourceProbeResult get() {
+					return runTest(scheme, url, (String)credentials.get("user"), (String)credentials.get("password"), timeoutSeconds);
+				}
+			}, getExecutor());
+		}
+		catch(RejectedExecutionException reex) {
+			return CompletableFuture.completedFuture(OnPremDataSourceProbeResult.failed(new OnPremDataSourceThrottledException("Too many relational data source tests are pending. Try again later."), 0));
+		}
+		catch(OnPremDataSourceAccessTestConfigurationException opdsatce) {
+			return CompletableFuture.completedFuture(OnPremDataSourceProbeResult.failed(opdsatce, 0));
+		}
+
+	} // probe
+
+	/**
+	 * Connects to the data source, runs the dummy query and disconnects.
+	 */
+	private static OnPremDataSourceProbeResult runTest(String scheme, String url, String user, String password, long timeoutSeconds) {
+
+		long start = System.currentTimeMillis();
+		RelationalOnPremDataSource resource = null;
+
+		try {
+			resource = new RelationalOnPremDataSource(scheme, url, user, password);
+			// connect to the resource; the connector's timeout properties bound the time spent waiting for the data source
+			resource.connect(resource.getAccessTestConfig().getTimeoutProperties(timeoutSeconds));
+			// run the dummy query
+			String result = resource.runQuery();
+
+			if(result != null) {
+				// a result was returned; it appears that the on-premises resource is accessible
+				return new OnPremDataSourceProbeResult(true, "The test query executed successfully on the on-premises database.", System.currentTimeMillis() - start);
+			}
+			else {
+				// no result was returned; it appears that the on-premises resource cannot be accessed properly
+				return new OnPremDataSourceProbeResult(false, "The test query did not return a result from the on-premises database.", System.currentTimeMillis() - start);
+			}
+		}
+		catch(OnPremDataSourceNotSupportedException opdsnsex) {
+			// the resource type cannot be processed
+			return new OnPremDataSourceProbeResult(OnPremDataSourceProbeResult.STATUS_SKIPPED, "Test was skipped. The user-provided service references a JDBC data source of type "+ opdsnsex.getMessage() + ", which is currently not supported by this utility.", 0);
+		}
+		catch(OnPremDataSourceAccessTestException opex) {
+			// a problem was encountered while trying to connect to the data source or running the dummy query
+			System.err.println(opex.getMessage());
+			return OnPremDataSourceProbeResult.failed(opex, System.currentTimeMillis() - start);
+		}
+		catch(Exception ex) {
+			System.err.println(ex.getMessage());
+			ex.printStackTrace(System.err);
+			return OnPremDataSourceProbeResult.failed(ex, System.currentTimeMillis() - start);
+		}
+		finally {
+			if(resource != null) {
+				// disconnect from the data source to release all allocated resources
+				resource.disconnect();
+			}
+		}
+
+	} // runTest
+
+} // class
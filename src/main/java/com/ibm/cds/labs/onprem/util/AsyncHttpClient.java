@@ -0,0 +1,306 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Minimal non-blocking HTTP client, based on java.nio asynchronous socket channels. All requests share a single I/O thread,
+ * which allows one thread to serve many outstanding requests. Requests are sent as HTTP/1.0 with "Connection: close", so the
+ * response body is never chunked and ends when the server closes the connection. Only plain http URLs are supported.
+ * Host names are resolved by a small dedicated thread pool, because name resolution blocks; neither the calling thread nor the
+ * I/O thread waits for DNS lookups, and the request deadline also applies to name resolution.
+ *
+ */
+public class AsyncHttpClient {
+
+	private static AsynchronousChannelGroup GROUP = null;
+	private static ScheduledExecutorService TIMER = null;
+	private static ExecutorService RESOLVER = null;
+
+	// number of concurrent host name lookups
+	private static final int RESOLVER_THREADS = 4;
+
+	/**
+	 * An HTTP response.
+	 */
+	public static class Response {
+		private final int status;
+		private final byte[] body;
+
+		Response(int status, byte[] body) {
+			this.status = status;
+			this.body = body;
+		}
+
+		/**
+		 * @return the HTTP status code, such as 200
+		 */
+		public int getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return the response body, decoded as UTF-8
+		 */
+		public String getBody() {
+			try {
+				return new String(body, "UTF-8");
+			}
+			catch(UnsupportedEncodingException ueex) {
+				return new String(body);
+			}
+		}
+	} // Response
+
+	private static synchronized void init()
+	 throws IOException {
+
+		if(GROUP == null) {
+			ThreadFactory daemon = new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "onprem-async-http");
+					t.setDaemon(true);
+					return t;
+				}
+			};
+			GROUP = AsynchronousChannelGroup.withFixedThreadPool(1, daemon);
+			TIMER = Executors.newSingleThreadScheduledExecutor(daemon);
+			RESOLVER = Executors.newFixedThreadPool(RESOLVER_THREADS, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "onprem-async-http-resolver");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+
+	} // init
+
+	/**
+	 * Sends a GET request.
+	 * @param uri - the request URL; must use the http scheme
+	 * @param headers - additional request headers; may be null
+	 * @param timeoutMillis - the deadline for the complete exchange, including name resolution and connection establishment
+	 * @param maxResponseBytes - the maximum response size (status line, headers and body)
+	 * @return the pending response; completes exceptionally if the request failed or the deadline expired
+	 */
+	public static CompletableFuture<Response> get(URI uri, Map<String,String> headers, final long timeoutMillis, final int maxResponseBytes) {
+
+		final CompletableFuture<Response> result = new CompletableFuture<Response>();
+		final AsynchronousSocketChannel channel;
+
+		try {
+			if(! "http".equalsIgnoreCase(uri.getScheme()) || (uri.getHost() == null)) {
+				throw new IOException("Unsupported URL " + uri + ". Only http URLs are supported.");
+			}
+			init();
+			channel = AsynchronousSocketChannel.open(GROUP);
+		}
+		catch(IOException ioex) {
+			result.completeExceptionally(ioex);
+			return result;
+		}
+
+		// enforce the deadline; closing the channel aborts pending operations
+		final ScheduledFuture<?> timer = TIMER.schedule(new Runnable() {
+			public void run() {
+				result.completeExceptionally(new SocketTimeoutException("No response was received from " + uri + " within " + timeoutMillis + " ms."));
+			}
+		}, timeoutMillis, TimeUnit.MILLISECONDS);
+
+		result.whenComplete(new BiConsumer<Response,Throwable>() {
+			public void accept(Response response, Throwable t) {
+				timer.cancel(false);
+				try {
+					channel.close();
+				}
+				catch(IOException ioex) {
+					// ignore
+				}
+			}
+		});
+
+		final int port = (uri.getPort() == -1) ? 80 : uri.getPort();
+		String path = (uri.getRawPath() == null || uri.getRawPath().length() == 0) ? "/" : uri.getRawPath();
+		if(uri.getRawQuery() != null) {
+			path = path + "?" + uri.getRawQuery();
+		}
+
+		StringBuilder request = new StringBuilder();
+		request.append("GET ").append(path).append(" HTTP/1.0\r\n");
+		request.append("Host: ").append(uri.getHost()).append(uri.getPort() == -1 ? "" : ":" + uri.getPort()).append("\r\n");
+		request.append("Connection: close\r\n");
+		if(headers != null) {
+			for(Map.Entry<String,String> header : headers.entrySet()) {
+				request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+			}
+		}
+		request.append("\r\n");
+
+		final ByteBuffer out;
+		final ByteBuffer in = ByteBuffer.allocate(8192);
+		final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+		try {
+			out = ByteBuffer.wrap(request.toString().getBytes("ISO-8859-1"));
+		}
+		catch(UnsupportedEncodingException ueex) {
+			result.completeExceptionally(ueex);
+			return result;
+		}
+
+		final CompletionHandler<Integer,Void> reader = new CompletionHandler<Integer,Void>() {
+			public void completed(Integer count, Void attachment) {
+				if(count < 0) {
+					// the server closed the connection; the response is complete
+					try {
+						result.complete(parse(received.toByteArray()));
+					}
+					catch(IOException ioex) {
+						result.completeExceptionally(ioex);
+					}
+					return;
+				}
+				received.write(in.array(), 0, in.position());
+				in.clear();
+				if(received.size() > maxResponseBytes) {
+					result.completeExceptionally(new IOException("The response from " + uri + " exceeds " + maxResponseBytes + " bytes."));
+					return;
+				}
+				if(! result.isDone()) {
+					channel.read(in, null, this);
+				}
+			}
+			public void failed(Throwable t, Void attachment) {
+				result.completeExceptionally(t);
+			}
+		};
+
+		final CompletionHandler<Integer,Void> writer = new CompletionHandler<Integer,Void>() {
+			public void completed(Integer count, Void attachment) {
+				if(out.hasRemaining()) {
+					channel.write(out, null, this);
+				}
+				else {
+					channel.read(in, null, reader);
+				}
+			}
+			public void failed(Throwable t, Void attachment) {
+				result.completeExceptionally(t);
+			}
+		};
+
+		final CompletionHandler<Void,Void> connector = new CompletionHandler<Void,Void>() {
+			public void completed(Void v, Void attachment) {
+				channel.write(out, null, writer);
+			}
+			public void failed(Throwable t, Void attachment) {
+				result.completeExceptionally(t);
+			}
+		};
+
+		try {
+			RESOLVER.execute(new Runnable() {
+				public void run() {
+					if(result.isDone()) {
+						// the deadline expired while the lookup was queued
+						return;
+					}
+					// blocks until the host name is resolved
+					InetSocketAddress address = new InetSocketAddress(uri.getHost(), port);
+					if(address.isUnresolved()) {
+						result.completeExceptionally(new UnknownHostException(uri.getHost()));
+						return;
+					}
+					try {
+						channel.connect(address, null, connector);
+					}
+					catch(RuntimeException rex) {
+						// the channel was closed by the timer
+						result.completeExceptionally(rex);
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException reex) {
+			result.completeExceptionally(reex);
+		}
+
+		return result;
+
+	} // get
+
+	/*
+	 * Parses a raw HTTP/1.x response.
+	 */
+	private static Response parse(byte[] raw)
+	 throws IOException {
+
+		// locate the end of the header section
+		int bodyStart = -1;
+		for(int i = 0; i + 3 < raw.length; i++) {
+			if(raw[i] == '\r' && raw[i + 1] == '\n' && raw[i + 2] == '\r' && raw[i + 3] == '\n') {
+				bodyStart = i + 4;
+				break;
+			}
+		}
+		if(bodyStart == -1) {
+			throw new IOException("The server returned an incomplete HTTP response.");
+		}
+
+		// status line: HTTP/1.x CODE REASON
+		String head = new String(raw, 0, bodyStart, "ISO-8859-1");
+		String[] statusLine = head.substring(0, head.indexOf("\r\n")).split(" ");
+		if((statusLine.length < 2) || (! statusLine[0].startsWith("HTTP/"))) {
+			throw new IOException("The server returned an invalid HTTP status line.");
+		}
+
+		int status = 0;
+		try {
+			status = Integer.parseInt(statusLine[1]);
+		}
+		catch(NumberFormatException nfex) {
+			throw new IOException("The server returned an invalid HTTP status code " + statusLine[1] + ".");
+		}
+
+		byte[] body = new byte[raw.length - bodyStart];
+		System.arraycopy(raw, bodyStart, body, 0, body.length);
+		return new Response(status, body);
+
+	} // parse
+
+} // end class
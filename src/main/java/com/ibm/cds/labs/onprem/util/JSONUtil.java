@@ -86,5 +86,73 @@ public class JSONUtil {
 		return artifactwithnormalizedkeys;
 		
 	} // end method normalize(JSONArtifact)
+
+	/**
+	 * Returns the numeric value of a JSON object property. The JSON parser returns numbers as Long or Double; both are accepted,
+	 * as are numeric strings, such as "500".
+	 * @param object The JSON object; may be null
+	 * @param key The property name
+	 * @param defaultValue The value to be returned if the property is not defined or is not numeric
+	 * @return the property value or defaultValue
+	 */
+	public static long getLong(JSONObject object, String key, long defaultValue) {
+		
+		if(object == null)
+			return defaultValue;
+		
+		Object value = object.get(key);
+		if(value instanceof Number) {
+			return ((Number)value).longValue();
+		}
+		else if(value instanceof String) {
+			try {
+				return Long.parseLong(((String)value).trim());
+			}
+			catch(NumberFormatException nfex) {
+				// ignore; return the default
+			}
+		}
+		return defaultValue;
+		
+	} // end method getLong
+
+	/**
+	 * Returns the numeric value of a JSON object property as an int. Refer to getLong for details.
+	 * @param object The JSON object; may be null
+	 * @param key The property name
+	 * @param defaultValue The value to be returned if the property is not defined or is not numeric
+	 * @return the property value or defaultValue
+	 */
+	public static int getInt(JSONObject object, String key, int defaultValue) {
+		return (int) getLong(object, key, defaultValue);
+	} // end method getInt
+
+	/**
+	 * Returns the numeric value of a JSON object property as a double. Refer to getLong for details.
+	 * @param object The JSON object; may be null
+	 * @param key The property name
+	 * @param defaultValue The value to be returned if the property is not defined or is not numeric
+	 * @return the property value or defaultValue
+	 */
+	public static double getDouble(JSONObject object, String key, double defaultValue) {
+		
+		if(object == null)
+			return defaultValue;
+		
+		Object value = object.get(key);
+		if(value instanceof Number) {
+			return ((Number)value).doubleValue();
+		}
+		else if(value instanceof String) {
+			try {
+				return Double.parseDouble(((String)value).trim());
+			}
+			catch(NumberFormatException nfex) {
+				// ignore; return the default
+			}
+		}
+		return defaultValue;
+		
+	} // end method getDouble
 	
 } // end class
@@ -0,0 +1,171 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ibm.json.java.JSONArray;
+import com.ibm.json.java.JSONObject;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests how the cluster test merges per-instance results and identifies outliers.
+ * @author ptitzler
+ *
+ */
+public class OnPremDataSourceAccessClusterTest extends TestCase {
+
+	private JSONArray instances = null;
+	private List<JSONObject> reports = null;
+	private JSONObject settings = null;
+
+	protected void setUp() {
+		instances = new JSONArray();
+		reports = new ArrayList<JSONObject>();
+		settings = new JSONObject();
+		settings.put("latency_factor", 3);
+		settings.put("latency_min_delta_ms", 250);
+		settings.put("success_rate_delta", 0.25);
+	}
+
+	public void testMajorityResultIsNotFlagged() throws Exception {
+		addInstance("a", service("db", "passed", 100));
+		addInstance("b", service("db", "passed", 100));
+		addInstance("c", service("db", "failed", 100));
+		JSONArray outliers = new JSONArray();
+		JSONObject merged = (JSONObject) OnPremDataSourceAccessCluster.merge(instances, reports, settings, outliers).get(0);
+		assertEquals(2L, ((Number) merged.get("passed")).longValue());
+		assertEquals(1L, ((Number) merged.get("failed")).longValue());
+		assertEquals("false", merged.get("consistent"));
+		assertEquals(1L, outliers.size());
+		assertEquals("c", ((JSONObject) outliers.get(0)).get("instance"));
+		assertEquals("success", ((JSONObject) outliers.get(0)).get("reason"));
+	}
+
+	public void testMinorityPassIsFlagged() throws Exception {
+		addInstance("a", service("db", "failed", 100));
+		addInstance("b", service("db", "failed", 100));
+		addInstance("c", service("db", "passed", 100));
+		JSONArray outliers = new JSONArray();
+		OnPremDataSourceAccessCluster.merge(instances, reports, settings, outliers);
+		assertEquals(1L, outliers.size());
+		assertEquals("c", ((JSONObject) outliers.get(0)).get("instance"));
+	}
+
+	public void testTieFlagsFailedInstances() throws Exception {
+		addInstance("a", service("db", "passed", 100));
+		addInstance("b", service("db", "failed", 100));
+		JSONArray outliers = new JSONArray();
+		OnPremDataSourceAccessCluster.merge(instances, reports, settings, outliers);
+		assertEquals(1L, outliers.size());
+		assertEquals("b", ((JSONObject) outliers.get(0)).get("instance"));
+	}
+
+	public void testLatencyOutlierRequiresFactorAndMinimumDelta() throws Exception {
+		addInstance("a", service("slow", "passed", 100), service("fast", "passed", 10));
+		addInstance("b", service("slow", "passed", 120), service("fast", "passed", 10));
+		// 4 times the median and 300 ms longer; 4 times the median, but only 30 ms longer
+		addInstance("c", service("slow", "passed", 440), service("fast", "passed", 40));
+		JSONArray outliers = new JSONArray();
+		OnPremDataSourceAccessCluster.merge(instances, reports, settings, outliers);
+		assertEquals(1L, outliers.size());
+		JSONObject outlier = (JSONObject) outliers.get(0);
+		assertEquals("c", outlier.get("instance"));
+		assertEquals("slow", outlier.get("svc_name"));
+		assertEquals("latency", outlier.get("reason"));
+	}
+
+	public void testLatencyBelowFactorIsNotFlagged() throws Exception {
+		addInstance("a", service("db", "passed", 1000));
+		addInstance("b", service("db", "passed", 1000));
+		// 1000 ms longer, but less than 3 times the median
+		addInstance("c", service("db", "passed", 2000));
+		JSONArray outliers = new JSONArray();
+		OnPremDataSourceAccessCluster.merge(instances, reports, settings, outliers);
+		assertEquals(0L, outliers.size());
+	}
+
+	public void testSkippedAndThrottledTestsAreIgnored() throws Exception {
+		addInstance("a", service("db", "passed", 100));
+		addInstance("b", service("db", "throttled", 0));
+		addInstance("c", service("db", "skipped", 0));
+		JSONArray outliers = new JSONArray();
+		JSONObject merged = (JSONObject) OnPremDataSourceAccessCluster.merge(instances, reports, settings, outliers).get(0);
+		assertEquals(1L, ((Number) merged.get("passed")).longValue());
+		assertEquals(0L, ((Number) merged.get("failed")).longValue());
+		assertEquals("true", merged.get("consistent"));
+		assertEquals(3L, ((JSONArray) merged.get("instances")).size());
+		OnPremDataSourceAccessCluster.findSuccessRateOutliers(instances, reports, settings, outliers);
+		assertEquals(0L, outliers.size());
+		// instances that did not run any test have no success rate
+		assertNull(((JSONObject) instances.get(1)).get("success_rate"));
+	}
+
+	public void testMissingReportsAreIgnored() throws Exception {
+		addInstance("a", service("db", "passed", 100));
+		JSONObject unreachable = new JSONObject();
+		unreachable.put("instance", "b");
+		instances.add(unreachable);
+		reports.add(null);
+		JSONArray outliers = new JSONArray();
+		JSONObject merged = (JSONObject) OnPremDataSourceAccessCluster.merge(instances, reports, settings, outliers).get(0);
+		assertEquals(1L, ((JSONArray) merged.get("instances")).size());
+		OnPremDataSourceAccessCluster.findSuccessRateOutliers(instances, reports, settings, outliers);
+		assertEquals(0L, outliers.size());
+	}
+
+	public void testSuccessRateOutlierRequiresDelta() throws Exception {
+		addInstance("a", service("s1", "passed", 10), service("s2", "passed", 10), service("s3", "passed", 10), service("s4", "passed", 10));
+		addInstance("b", service("s1", "passed", 10), service("s2", "passed", 10), service("s3", "passed", 10), service("s4", "passed", 10));
+		// 75% is exactly success_rate_delta below the median
+		addInstance("c", service("s1", "passed", 10), service("s2", "passed", 10), service("s3", "passed", 10), service("s4", "failed", 10));
+		JSONArray outliers = new JSONArray();
+		OnPremDataSourceAccessCluster.findSuccessRateOutliers(instances, reports, settings, outliers);
+		assertEquals(1L, outliers.size());
+		assertEquals("c", ((JSONObject) outliers.get(0)).get("instance"));
+		assertEquals("success_rate", ((JSONObject) outliers.get(0)).get("reason"));
+		assertEquals(0.75, ((Number) ((JSONObject) instances.get(2)).get("success_rate")).doubleValue(), 0.001);
+
+		settings.put("success_rate_delta", 0.3);
+		outliers = new JSONArray();
+		OnPremDataSourceAccessCluster.findSuccessRateOutliers(instances, reports, settings, outliers);
+		assertEquals(0L, outliers.size());
+	}
+
+	private void addInstance(String name, JSONObject... services) {
+		JSONObject instance = new JSONObject();
+		instance.put("instance", name);
+		instances.add(instance);
+		JSONObject report = new JSONObject();
+		JSONArray svclist = new JSONArray();
+		for(JSONObject service : services) {
+			svclist.add(service);
+		}
+		report.put("instance", name);
+		report.put("services", svclist);
+		reports.add(report);
+	}
+
+	private static JSONObject service(String svcName, String status, long elapsed) {
+		JSONObject service = new JSONObject();
+		service.put("svc_name", svcName);
+		service.put("success", Boolean.toString(OnPremDataSourceProbeResult.STATUS_PASSED.equals(status)));
+		service.put("status", status);
+		service.put("output", "");
+		service.put("elapsed_ms", elapsed);
+		return service;
+	}
+
+} // class
@@ -0,0 +1,171 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.json.java.JSONObject;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the bulkheads that limit concurrent access to on-premises data sources.
+ * @author ptitzler
+ *
+ */
+public class OnPremDataSourceBulkheadTest extends TestCase {
+
+	private ScheduledExecutorService timer = null;
+
+	protected void setUp() {
+		timer = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	protected void tearDown() {
+		timer.shutdownNow();
+	}
+
+	public void testGrantsPermitsUpToLimit() throws Exception {
+		OnPremDataSourceBulkhead bulkhead = new OnPremDataSourceBulkhead("test", 2, 4, 10000, timer);
+		assertTrue(bulkhead.acquire().isDone());
+		assertTrue(bulkhead.acquire().isDone());
+		CompletableFuture<Void> third = bulkhead.acquire();
+		assertFalse(third.isDone());
+		assertEquals(2L, ((Number) bulkhead.getStatistics().get("in_use")).longValue());
+		assertEquals(1L, ((Number) bulkhead.getStatistics().get("queue_depth")).longValue());
+	}
+
+	public void testReleaseHandsPermitToOldestWaiter() throws Exception {
+		OnPremDataSourceBulkhead bulkhead = new OnPremDataSourceBulkhead("test", 1, 4, 10000, timer);
+		bulkhead.acquire().get();
+		CompletableFuture<Void> first = bulkhead.acquire();
+		CompletableFuture<Void> second = bulkhead.acquire();
+		bulkhead.release();
+		assertTrue(first.isDone());
+		assertFalse(second.isDone());
+		bulkhead.release();
+		assertTrue(second.isDone());
+		bulkhead.release();
+		assertEquals(0L, ((Number) bulkhead.getStatistics().get("in_use")).longValue());
+		assertEquals(3L, ((Number) bulkhead.getStatistics().get("acquired")).longValue());
+	}
+
+	public void testRejectsWhenQueueIsFull() throws Exception {
+		OnPremDataSourceBulkhead bulkhead = new OnPremDataSourceBulkhead("test", 1, 1, 10000, timer);
+		bulkhead.acquire().get();
+		assertFalse(bulkhead.acquire().isDone());
+		CompletableFuture<Void> rejected = bulkhead.acquire();
+		assertTrue(rejected.isCompletedExceptionally());
+		try {
+			rejected.get();
+			fail("The request should have been rejected.");
+		}
+		catch(ExecutionException eex) {
+			assertTrue(eex.getCause() instanceof OnPremDataSourceThrottledException);
+		}
+		assertEquals(1L, ((Number) bulkhead.getStatistics().get("rejected")).longValue());
+	}
+
+	public void testWaitingRequestTimesOut() throws Exception {
+		OnPremDataSourceBulkhead bulkhead = new OnPremDataSourceBulkhead("test", 1, 1, 50, timer);
+		bulkhead.acquire().get();
+		CompletableFuture<Void> waiting = bulkhead.acquire();
+		try {
+			waiting.get(5, TimeUnit.SECONDS);
+			fail("The request should have timed out.");
+		}
+		catch(ExecutionException eex) {
+			assertTrue(eex.getCause() instanceof OnPremDataSourceThrottledException);
+		}
+		JSONObject statistics = bulkhead.getStatistics();
+		assertEquals(1L, ((Number) statistics.get("timed_out")).longValue());
+		assertEquals(0L, ((Number) statistics.get("queue_depth")).longValue());
+		// the expired request does not receive the permit
+		bulkhead.release();
+		assertEquals(0L, ((Number) bulkhead.getStatistics().get("in_use")).longValue());
+	}
+
+	public void testTryAcquireDoesNotWait() throws Exception {
+		OnPremDataSourceBulkhead bulkhead = new OnPremDataSourceBulkhead("test", 1, 4, 10000, timer);
+		assertTrue(bulkhead.tryAcquire());
+		assertFalse(bulkhead.tryAcquire());
+		JSONObject statistics = bulkhead.getStatistics();
+		assertEquals(0L, ((Number) statistics.get("queue_depth")).longValue());
+		assertEquals(0L, ((Number) statistics.get("rejected")).longValue());
+		bulkhead.release();
+		assertTrue(bulkhead.tryAcquire());
+	}
+
+	public void testTryAcquireRespectsPerTargetLimit() throws Exception {
+		// DB2 connectors are limited to 2 concurrent connections per target in rdbms_config.json
+		String target = "trytarget:50000";
+		OnPremDataSourceBulkheads.Permit first = OnPremDataSourceBulkheads.tryAcquire("db2", target);
+		OnPremDataSourceBulkheads.Permit second = OnPremDataSourceBulkheads.tryAcquire("db2", target);
+		assertNotNull(first);
+		assertNotNull(second);
+		assertNull(OnPremDataSourceBulkheads.tryAcquire("db2", target));
+		// other targets are not affected
+		OnPremDataSourceBulkheads.Permit other = OnPremDataSourceBulkheads.tryAcquire("db2", "othertarget:50000");
+		assertNotNull(other);
+		other.release();
+		first.release();
+		// releasing twice has no effect
+		first.release();
+		OnPremDataSourceBulkheads.Permit third = OnPremDataSourceBulkheads.tryAcquire("db2", target);
+		assertNotNull(third);
+		assertNull(OnPremDataSourceBulkheads.tryAcquire("db2", target));
+		second.release();
+		third.release();
+	}
+
+	public void testFailedTryAcquireReturnsPartialPermits() throws Exception {
+		String target = "partialtarget:50000";
+		OnPremDataSourceBulkheads.Permit first = OnPremDataSourceBulkheads.tryAcquire("db2", target);
+		OnPremDataSourceBulkheads.Permit second = OnPremDataSourceBulkheads.tryAcquire("db2", target);
+		long before = inUse("scheme:db2");
+		assertNull(OnPremDataSourceBulkheads.tryAcquire("db2", target));
+		assertEquals(before, inUse("scheme:db2"));
+		first.release();
+		second.release();
+	}
+
+	public void testBlockingAcquireWaitsForRelease() throws Exception {
+		final String target = "blockingtarget:50000";
+		final OnPremDataSourceBulkheads.Permit first = OnPremDataSourceBulkheads.acquireBlocking("db2", target);
+		OnPremDataSourceBulkheads.Permit second = OnPremDataSourceBulkheads.acquireBlocking("db2", target);
+		timer.schedule(new Runnable() {
+			public void run() {
+				first.release();
+			}
+		}, 50, TimeUnit.MILLISECONDS);
+		OnPremDataSourceBulkheads.Permit third = OnPremDataSourceBulkheads.acquireBlocking("db2", target);
+		assertNotNull(third);
+		second.release();
+		third.release();
+	}
+
+	private static long inUse(String name) {
+		for(Object statisticsobj : OnPremDataSourceBulkheads.getStatistics()) {
+			JSONObject statistics = (JSONObject) statisticsobj;
+			if(name.equals(statistics.get("name"))) {
+				return ((Number) statistics.get("in_use")).longValue();
+			}
+		}
+		return 0;
+	}
+
+} // class
@@ -0,0 +1,112 @@
+/*-------------------------------------------------------------------------------
+ Copyright IBM Corp. 2015
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+-------------------------------------------------------------------------------*/
+package com.ibm.cds.labs.onprem;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the time-to-live and incremental refresh logic of the data source catalog cache.
+ * @author ptitzler
+ *
+ */
+public class OnPremDataSourceCatalogTest extends TestCase {
+
+	private static final long TTL = 1000;
+
+	public void testNewCatalogIsStale() throws Exception {
+		OnPremDataSourceCatalog catalog = new OnPremDataSourceCatalog(TTL);
+		assertTrue(catalog.isSchemaListStale(System.currentTimeMillis()));
+		assertTrue(catalog.getSchemas().isEmpty());
+	}
+
+	public void testSchemaListExpiresAfterTTL() throws Exception {
+		OnPremDataSourceCatalog catalog = new OnPremDataSourceCatalog(TTL);
+		catalog.setSchemaList(Arrays.asList("APP", "SALES"), 10000);
+		assertFalse(catalog.isSchemaListStale(10000));
+		assertFalse(catalog.isSchemaListStale(10000 + TTL - 1));
+		assertTrue(catalog.isSchemaListStale(10000 + TTL));
+	}
+
+	public void testNewSchemasAreStaleUntilLoaded() throws Exception {
+		OnPremDataSourceCatalog catalog = new OnPremDataSourceCatalog(TTL);
+		catalog.setSchemaList(Arrays.asList("APP", "SALES"), 10000);
+		assertEquals(2L, catalog.getStaleSchemas(null, 10000).size());
+		assertFalse(catalog.hasTable("APP", "ORDERS"));
+		catalog.putSchema("APP", tables("ORDERS", "ID", "AMOUNT"), 10000);
+		assertEquals(Arrays.asList("SALES"), catalog.getStaleSchemas(null, 10000));
+		assertTrue(catalog.hasTable("app", "orders"));
+	}
+
+	public void testSchemasExpireIndependently() throws Exception {
+		OnPremDataSourceCatalog catalog = new OnPremDataSourceCatalog(TTL);
+		catalog.setSchemaList(Arrays.asList("APP", "SALES"), 10000);
+		catalog.putSchema("APP", tables("ORDERS", "ID"), 10000);
+		catalog.putSchema("SALES", tables("REGIONS", "ID"), 10500);
+		assertEquals(Arrays.asList("APP"), catalog.getStaleSchemas(null, 10000 + TTL));
+		// only the requested schemas are considered
+		assertTrue(catalog.getStaleSchemas(Collections.singletonList("SALES"), 10000 + TTL).isEmpty());
+		assertEquals(2L, catalog.getStaleSchemas(null, 10500 + TTL).size());
+	}
+
+	public void testUnknownSchemasAreNotStale() throws Exception {
+		OnPremDataSourceCatalog catalog = new OnPremDataSourceCatalog(TTL);
+		catalog.setSchemaList(Arrays.asList("APP"), 10000);
+		assertTrue(catalog.getStaleSchemas(Collections.singletonList("MISSING"), 10000).isEmpty());
+	}
+
+	public void testSchemaListRefreshRetainsCachedSchemas() throws Exception {
+		OnPremDataSourceCatalog catalog = new OnPremDataSourceCatalog(TTL);
+		catalog.setSchemaList(Arrays.asList("APP", "SALES"), 10000);
+		catalog.putSchema("APP", tables("ORDERS", "ID"), 10000);
+		catalog.putSchema("SALES", tables("REGIONS", "ID"), 10000);
+		// SALES was dropped and HR was created
+		catalog.setSchemaList(Arrays.asList("app", "HR"), 10100);
+		assertEquals(Arrays.asList("APP", "HR"), catalog.getSchemas());
+		assertFalse(catalog.hasSchema("SALES"));
+		assertTrue(catalog.hasTable("APP", "ORDERS"));
+		assertEquals(Arrays.asList("HR"), catalog.getStaleSchemas(null, 10100));
+	}
+
+	public void testInvalidateMarksEverythingStale() throws Exception {
+		OnPremDataSourceCatalog catalog = new OnPremDataSourceCatalog(TTL);
+		catalog.setSchemaList(Arrays.asList("APP"), 10000);
+		catalog.putSchema("APP", tables("ORDERS", "ID"), 10000);
+		catalog.invalidate();
+		assertTrue(catalog.isSchemaListStale(10000));
+		assertEquals(Arrays.asList("APP"), catalog.getStaleSchemas(null, 10000));
+		// cached information remains available until it is replaced
+		assertTrue(catalog.hasTable("APP", "ORDERS"));
+	}
+
+	public void testResolveTableReturnsStoredSpelling() throws Exception {
+		OnPremDataSourceCatalog catalog = new OnPremDataSourceCatalog(TTL);
+		catalog.setSchemaList(Arrays.asList("App"), 10000);
+		catalog.putSchema("App", tables("Orders", "ID", "AMOUNT"), 10000);
+		assertEquals(Arrays.asList("App", "Orders"), Arrays.asList(catalog.resolveTable("APP", "ORDERS")));
+		assertNull(catalog.resolveTable("APP", "MISSING"));
+		assertEquals(Arrays.asList("STATUS"), catalog.getMissingColumns("app", "orders", Arrays.asList("id", "STATUS")));
+	}
+
+	private static Map<String,List<String>> tables(String table, String... columns) {
+		Map<String,List<String>> tables = new HashMap<String,List<String>>();
+		tables.put(table, Arrays.asList(columns));
+		return tables;
+	}
+
+} // class